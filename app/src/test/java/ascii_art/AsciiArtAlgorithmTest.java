@@ -0,0 +1,71 @@
+package ascii_art;
+
+import image.BrightnessMatrix;
+import image.Image;
+import image.ImageProcessor;
+import image_char_matching.SubImgCharMatcher;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+/**
+ * Checks that matching characters in parallel bands of rows gives the same ASCII art as matching them
+ * on the calling thread, for every rounding method.
+ */
+class AsciiArtAlgorithmTest {
+    private static final int NUM_IMAGES = 10;
+    private static final int MAX_HALF_SIDE = 400;
+    private static final int NUM_THREADS = 4;
+    private static final char[] CHARSET = BatchConverter.parseCharset("all");
+    private static final String[] ROUND_METHODS = {"abs", "up", "down"};
+
+    private static ExecutorService executor;
+
+    private final Random random = new Random(20261018L);
+
+    @BeforeAll
+    static void startExecutor() {
+        executor = Executors.newFixedThreadPool(NUM_THREADS);
+    }
+
+    @AfterAll
+    static void stopExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void parallelRunIsSequentialRun() {
+        SubImgCharMatcher matcher = new SubImgCharMatcher(CHARSET);
+        ImageProcessor imageProcessor = new ImageProcessor();
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int width = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int height = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int[] pixels = new int[width * height];
+            for (int i = 0; i < pixels.length; i++) {
+                pixels[i] = random.nextInt();
+            }
+            Image image = new Image(pixels, width, height);
+            int maxResolution = Math.min(ImageProcessor.extendDim(width), ImageProcessor.extendDim(height));
+            for (int resolution = 1; resolution <= maxResolution; resolution *= 2) {
+                BrightnessMatrix brightnessMatrix = imageProcessor.createBrightnessMatrix(image, resolution);
+                for (String roundMethod : ROUND_METHODS) {
+                    matcher.setRoundMethod(roundMethod);
+                    char[][] expected =
+                            new AsciiArtAlgorithm(image, resolution, matcher, brightnessMatrix).run();
+                    char[][] actual =
+                            new AsciiArtAlgorithm(image, resolution, matcher, brightnessMatrix, executor).run();
+                    assertArrayEquals(expected, actual);
+                    // Without a precomputed matrix, run calculates the same one:
+                    assertArrayEquals(expected,
+                            new AsciiArtAlgorithm(image, resolution, matcher, null, executor).run());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package image;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that every way of calculating brightness gives bit-identical results: parallel and sequential
+ * calculations, and the VECTOR, FIXED_POINT and summed-area table kernels, on random images and on
+ * padded views of them.
+ */
+class ImageProcessorTest {
+    private static final int NUM_IMAGES = 40;
+    private static final int NUM_VIEWS = 200;
+    private static final int MAX_HALF_SIDE = 300;
+    private static final int WIDE_HALF_SIDE = 1100; // Wider than a column block of a parallel table build.
+    private static final int PARALLELISM = 8;
+    private static final String VECTOR_KERNEL_CLASS = "image.VectorGreySum";
+
+    private final Random random = new Random(20261018L);
+
+    @Test
+    void parallelBrightnessMatrixIsSequentialOne() {
+        ImageProcessor sequential = new ImageProcessor(1);
+        ImageProcessor parallel = new ImageProcessor(PARALLELISM);
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int halfWidth = n == 0 ? WIDE_HALF_SIDE : 1 + random.nextInt(MAX_HALF_SIDE);
+            int[] pixels = randomPixels(2 * halfWidth, 2 + 2 * random.nextInt(MAX_HALF_SIDE));
+            int width = 2 * halfWidth;
+            int height = pixels.length / width;
+            // Separate images, so each processor scans the pixels for the first resolution, then builds its
+            // own summed-area table for the others:
+            Image sequentialImage = new Image(pixels.clone(), width, height);
+            Image parallelImage = new Image(pixels.clone(), width, height);
+            for (int resolution : resolutions(width, height)) {
+                assertSameMatrix(sequential.createBrightnessMatrix(sequentialImage, resolution),
+                        parallel.createBrightnessMatrix(parallelImage, resolution));
+            }
+        }
+    }
+
+    @Test
+    void parallelUpdatedMatrixIsSequentialOne() {
+        ImageProcessor sequential = new ImageProcessor(1, ImageProcessor.Kernel.VECTOR);
+        ImageProcessor parallel = new ImageProcessor(PARALLELISM, ImageProcessor.Kernel.VECTOR);
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int width = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int height = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int[] previousPixels = randomPixels(width, height);
+            int[] pixels = previousPixels.clone();
+            for (int i = random.nextInt(pixels.length); i < pixels.length; i += 1 + random.nextInt(pixels.length)) {
+                pixels[i] = random.nextInt();
+            }
+            Image previous = new Image(previousPixels, width, height);
+            Image image = new Image(pixels, width, height);
+            for (int resolution : resolutions(width, height)) {
+                BrightnessMatrix previousMatrix = sequential.createBrightnessMatrix(previous, resolution);
+                BrightnessMatrix expected = new ImageProcessor(1).createBrightnessMatrix(
+                        new Image(pixels.clone(), width, height), resolution);
+                assertSameMatrix(expected,
+                        sequential.updateBrightnessMatrix(previous, previousMatrix, image, resolution));
+                assertSameMatrix(expected,
+                        parallel.updateBrightnessMatrix(previous, previousMatrix, image, resolution));
+            }
+        }
+    }
+
+    @Test
+    void parallelSubImageMatrixIsSequentialOne() {
+        ImageProcessor imageProcessor = new ImageProcessor();
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int width = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int height = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            Image image = new Image(randomPixels(width, height), width, height);
+            int[] resolutions = resolutions(width, height);
+            int resolution = resolutions[random.nextInt(resolutions.length)];
+            Image[][] subImages = imageProcessor.divideImage(imageProcessor.extendImage(image), resolution);
+            assertSameMatrix(new BrightnessMatrix(subImages, 1), new BrightnessMatrix(subImages, PARALLELISM));
+        }
+    }
+
+    @Test
+    void kernelsAgreeOnPaddedViews() throws ReflectiveOperationException {
+        assertTrue(ImageProcessor.isVectorKernelAvailable(), "Run with --add-modules jdk.incubator.vector");
+        RowGreySum vectorKernel =
+                (RowGreySum) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        ImageProcessor fixedPoint = new ImageProcessor(1, ImageProcessor.Kernel.FIXED_POINT);
+        ImageProcessor vector = new ImageProcessor(1, ImageProcessor.Kernel.VECTOR);
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int width = 1 + random.nextInt(2 * MAX_HALF_SIDE);
+            int height = 1 + random.nextInt(2 * MAX_HALF_SIDE);
+            Image image = new Image(randomPixels(width, height), width, height);
+            for (int v = 0; v < NUM_VIEWS; v++) {
+                // Views may start before the image and end after it; the outside reads as white padding.
+                Image view = image.window(random.nextInt(height + 20) - 10, random.nextInt(width + 20) - 10,
+                        1 + random.nextInt(width + 10), 1 + random.nextInt(height + 10));
+                long tableSum = view.greySum();
+                assertEquals(tableSum, view.scanGreySum(null));
+                assertEquals(tableSum, view.scanGreySum(vectorKernel));
+                double brightness = ImageProcessor.brightness(tableSum, (long) view.getWidth() * view.getHeight());
+                assertEquals(brightness, fixedPoint.imageBrightness(view));
+                assertEquals(brightness, vector.imageBrightness(view));
+            }
+        }
+    }
+
+    @Test
+    void scannedMatrixIsTableMatrix() {
+        ImageProcessor imageProcessor = new ImageProcessor();
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int width = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int height = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int[] pixels = randomPixels(width, height);
+            Image image = new Image(pixels, width, height);
+            int[] resolutions = resolutions(width, height);
+            int resolution = resolutions[random.nextInt(resolutions.length)];
+            assertNull(image.prepareGreySums(1)); // The next matrix is the first, so it scans.
+            BrightnessMatrix scanned = new ImageProcessor().createBrightnessMatrix(
+                    new Image(pixels.clone(), width, height), resolution);
+            assertNotNull(image.prepareGreySums(1));
+            assertSameMatrix(scanned, imageProcessor.createBrightnessMatrix(image, resolution));
+        }
+    }
+
+    @Test
+    void tableMatrixMatchesVectorKernel() {
+        ImageProcessor table = new ImageProcessor();
+        ImageProcessor vector = new ImageProcessor(1, ImageProcessor.Kernel.VECTOR);
+        for (int n = 0; n < NUM_IMAGES; n++) {
+            int width = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            int height = 2 + 2 * random.nextInt(MAX_HALF_SIDE);
+            Image image = new Image(randomPixels(width, height), width, height);
+            for (int resolution : resolutions(width, height)) {
+                BrightnessMatrix matrix = table.createBrightnessMatrix(image, resolution);
+                Image[][] subImages = table.divideImage(table.extendImage(image), resolution);
+                for (int row = 0; row < subImages.length; row++) {
+                    for (int col = 0; col < subImages[row].length; col++) {
+                        assertEquals(matrix.getPixel(row, col), vector.imageBrightness(subImages[row][col]));
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns every resolution an image of the given size can be divided into.
+     */
+    private static int[] resolutions(int width, int height) {
+        int maxResolution = Math.min(ImageProcessor.extendDim(width), ImageProcessor.extendDim(height));
+        int[] resolutions = new int[Integer.numberOfTrailingZeros(maxResolution) + 1];
+        for (int i = 0; i < resolutions.length; i++) {
+            resolutions[i] = 1 << i;
+        }
+        return resolutions;
+    }
+
+    private int[] randomPixels(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt();
+        }
+        return pixels;
+    }
+
+    private static void assertSameMatrix(BrightnessMatrix expected, BrightnessMatrix actual) {
+        assertEquals(expected.getNumRows(), actual.getNumRows());
+        assertEquals(expected.getNumCols(), actual.getNumCols());
+        for (int row = 0; row < expected.getNumRows(); row++) {
+            double[] expectedRow = new double[expected.getNumCols()];
+            double[] actualRow = new double[actual.getNumCols()];
+            for (int col = 0; col < expectedRow.length; col++) {
+                expectedRow[col] = expected.getPixel(row, col);
+                actualRow[col] = actual.getPixel(row, col);
+            }
+            assertArrayEquals(expectedRow, actualRow);
+        }
+    }
+}
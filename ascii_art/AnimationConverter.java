@@ -0,0 +1,306 @@
+package ascii_art;
+
+import ascii_art.exceptions.AsciiArtExceptions;
+import ascii_output.DeltaConsoleAsciiOutput;
+import ascii_output.HtmlAnimationOutput;
+import image.BrightnessMatrix;
+import image.FrameSequence;
+import image.Image;
+import image.ImageProcessor;
+import image_char_matching.SubImgCharMatcher;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Converts an animated GIF, or a directory of numbered frames, to an ASCII animation.
+ * Frames go through a pipeline of single-threaded stages (decode, brightness, render), each working on a
+ * different frame at the same time, while the calling thread outputs the frames in order.
+ * Consecutive frames usually differ in small areas, so the brightness stage only recalculates the
+ * sub-images that changed, and the terminal only redraws the cells that changed. At most
+ * MAX_FRAMES_IN_FLIGHT frames are in the pipeline at once, so memory stays bounded whatever the length
+ * of the animation.
+ *
+ * Usage (through Shell.main):
+ * --animate source resolution charset format fps [outputFile]
+ * - source: an animated image file, or a directory of frames.
+ * - resolution: the number of characters in a row.
+ * - charset: the characters to use, or "all" for all printable ASCII characters.
+ * - format: "console" to play the animation in the terminal at fps frames per second, or "html" to
+ *   write a page playing it at fps frames per second (converted as fast as possible).
+ * - outputFile: the HTML file to write (default: out.html).
+ * When done, the throughput of the pipeline and the time each stage spent per frame are reported.
+ */
+public class AnimationConverter {
+    /**
+     * The first command-line argument selecting animation mode.
+     */
+    public static final String ANIMATE_FLAG = "--animate";
+    private static final String USAGE_ERROR =
+            "Usage: --animate <file|directory> <resolution> <charset|all> <console|html> <fps> [outputFile]";
+    private static final String INVALID_RESOLUTION_ERROR = "Resolution must be a positive integer.";
+    private static final String INVALID_FORMAT_ERROR = "Format must be console or html.";
+    private static final String INVALID_FPS_ERROR = "Frame rate must be a positive number.";
+    private static final String CHARSET_TOO_SMALL_ERROR = "Charset must contain at least 2 characters.";
+    private static final String OPEN_FAILED_MESSAGE = "Failed to open %s: %s%n";
+    private static final String FRAME_FAILED_MESSAGE = "Failed to convert frame %d: %s%n";
+    private static final String WRITE_FAILED_MESSAGE = "Failed to write %s: %s%n";
+    private static final String SUMMARY_MESSAGE = "Converted %d frames in %d ms (%.1f frames per second).%n";
+    private static final String STAGES_MESSAGE =
+            "Time per frame: decode %.2f ms, brightness %.2f ms, render %.2f ms, output %.2f ms.%n";
+    private static final String FORMAT_CONSOLE = "console";
+    private static final String FORMAT_HTML = "html";
+    private static final String DEFAULT_OUTPUT_FILE = "out.html";
+    private static final String FONT_NAME = "Courier New";
+    private static final int MIN_CHARSET_SIZE = 2;
+    private static final int MIN_ARGS = 6;
+    private static final int MAX_ARGS = 7;
+    private static final int MAX_FRAMES_IN_FLIGHT = 8;
+    private static final double NANOS_PER_SECOND = 1e9;
+    private static final double NANOS_PER_MILLI = 1e6;
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+
+    private final int resolution;
+    private final SubImgCharMatcher subImgCharMatcher;
+    private final String format;
+    private final double framesPerSecond;
+    private final String outputFile;
+    private final ImageProcessor imageProcessor;
+    // The total time each stage spent on frames, in nanoseconds:
+    private final AtomicLong decodeNanos = new AtomicLong();
+    private final AtomicLong brightnessNanos = new AtomicLong();
+    private final AtomicLong renderNanos = new AtomicLong();
+    private long outputNanos; // Only used by the calling thread.
+    // The last frame of the brightness stage and its matrix, only used by that stage:
+    private Image previousImage;
+    private BrightnessMatrix previousMatrix;
+
+    /**
+     * Constructs an animation converter.
+     *
+     * @param resolution      The number of characters in a row of every frame.
+     * @param charset         The characters to convert to.
+     * @param format          The output format: "console" or "html".
+     * @param framesPerSecond The frame rate of the animation.
+     * @param outputFile      The HTML file to write.
+     */
+    public AnimationConverter(int resolution, char[] charset, String format, double framesPerSecond,
+                              String outputFile) {
+        this.resolution = resolution;
+        this.subImgCharMatcher = new SubImgCharMatcher(charset);
+        this.format = format;
+        this.framesPerSecond = framesPerSecond;
+        this.outputFile = outputFile;
+        // Changed sub-images are summed with the Vector API when it is available:
+        this.imageProcessor = new ImageProcessor(1, ImageProcessor.Kernel.VECTOR);
+    }
+
+    /**
+     * Runs an animation conversion from command-line arguments.
+     *
+     * @param args The command-line arguments, starting with ANIMATE_FLAG.
+     * @return The exit status: 0 if every frame was converted and written, 1 otherwise.
+     * @throws AsciiArtExceptions If the arguments are invalid.
+     */
+    public static int run(String[] args) throws AsciiArtExceptions {
+        if (args.length < MIN_ARGS || args.length > MAX_ARGS) {
+            throw new AsciiArtExceptions(USAGE_ERROR);
+        }
+        int resolution;
+        try {
+            resolution = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            throw new AsciiArtExceptions(INVALID_RESOLUTION_ERROR);
+        }
+        if (resolution <= 0) {
+            throw new AsciiArtExceptions(INVALID_RESOLUTION_ERROR);
+        }
+        char[] charset = BatchConverter.parseCharset(args[3]);
+        if (charset.length < MIN_CHARSET_SIZE) {
+            throw new AsciiArtExceptions(CHARSET_TOO_SMALL_ERROR);
+        }
+        String format = args[4];
+        if (!format.equals(FORMAT_CONSOLE) && !format.equals(FORMAT_HTML)) {
+            throw new AsciiArtExceptions(INVALID_FORMAT_ERROR);
+        }
+        double framesPerSecond;
+        try {
+            framesPerSecond = Double.parseDouble(args[5]);
+        } catch (NumberFormatException e) {
+            throw new AsciiArtExceptions(INVALID_FPS_ERROR);
+        }
+        if (!(framesPerSecond > 0) || Double.isInfinite(framesPerSecond)) {
+            throw new AsciiArtExceptions(INVALID_FPS_ERROR);
+        }
+        String outputFile = args.length == MAX_ARGS ? args[6] : DEFAULT_OUTPUT_FILE;
+
+        return new AnimationConverter(resolution, charset, format, framesPerSecond, outputFile).convert(args[1]);
+    }
+
+    /**
+     * Converts and outputs all the frames of an animation.
+     *
+     * @param source An animated image file, or a directory of frames.
+     * @return The exit status: 0 if every frame was converted and written, 1 otherwise.
+     */
+    public int convert(String source) {
+        FrameSequence frames;
+        try {
+            frames = FrameSequence.open(source);
+        } catch (IOException e) {
+            System.err.printf(OPEN_FAILED_MESSAGE, source, e.getMessage());
+            return FAILURE;
+        }
+
+        ExecutorService decodeStage = Executors.newSingleThreadExecutor();
+        ExecutorService brightnessStage = Executors.newSingleThreadExecutor();
+        ExecutorService renderStage = Executors.newSingleThreadExecutor();
+        HtmlAnimationOutput htmlOutput = format.equals(FORMAT_HTML) ?
+                new HtmlAnimationOutput(outputFile, FONT_NAME, framesPerSecond) : null;
+        DeltaConsoleAsciiOutput consoleOutput = new DeltaConsoleAsciiOutput();
+        Deque<CompletableFuture<char[][]>> inFlight = new ArrayDeque<>();
+        int numFrames = frames.getNumFrames();
+        int submitted = 0;
+        int played = 0;
+        long start = System.nanoTime();
+        try {
+            while (played < numFrames) {
+                // Keep the pipeline full; every stage runs its frames in order.
+                while (submitted < numFrames && inFlight.size() < MAX_FRAMES_IN_FLIGHT) {
+                    inFlight.add(CompletableFuture.supplyAsync(() -> decode(frames), decodeStage)
+                            .thenApplyAsync(this::measure, brightnessStage)
+                            .thenApplyAsync(this::render, renderStage));
+                    submitted++;
+                }
+                char[][] chars;
+                try {
+                    chars = inFlight.poll().join();
+                } catch (CompletionException e) {
+                    Throwable cause = e.getCause() instanceof UncheckedIOException ? e.getCause().getCause() :
+                            e.getCause();
+                    System.err.printf(FRAME_FAILED_MESSAGE, played, cause.getMessage());
+                    return FAILURE;
+                }
+                if (htmlOutput != null) {
+                    long outputStart = System.nanoTime();
+                    htmlOutput.write(chars);
+                    outputNanos += System.nanoTime() - outputStart;
+                } else {
+                    play(consoleOutput, chars, played, start);
+                }
+                played++;
+            }
+            if (htmlOutput != null) {
+                htmlOutput.close();
+            }
+        } catch (IOException e) {
+            System.err.printf(WRITE_FAILED_MESSAGE, outputFile, e.getMessage());
+            return FAILURE;
+        } finally {
+            decodeStage.shutdownNow();
+            brightnessStage.shutdownNow();
+            renderStage.shutdownNow();
+            if (htmlOutput != null) {
+                close(htmlOutput);
+            }
+            close(frames, decodeStage);
+        }
+
+        report(played, System.nanoTime() - start);
+        return SUCCESS;
+    }
+
+    /**
+     * Prints a frame to the terminal over the previous one, waiting for its time to come.
+     */
+    private void play(DeltaConsoleAsciiOutput consoleOutput, char[][] chars, int index, long start) {
+        long delay = start + Math.round(index * NANOS_PER_SECOND / framesPerSecond) - System.nanoTime();
+        if (delay > 0) {
+            try {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        long outputStart = System.nanoTime();
+        consoleOutput.out(chars);
+        outputNanos += System.nanoTime() - outputStart;
+    }
+
+    /**
+     * Closes the output after a failure, which was already reported. Does nothing if it was closed.
+     */
+    private static void close(HtmlAnimationOutput htmlOutput) {
+        try {
+            htmlOutput.close();
+        } catch (IOException e) {
+            // The conversion already failed.
+        }
+    }
+
+    /**
+     * Closes the frames once the decode stage, which may still be decoding after a failure, is done.
+     */
+    private static void close(FrameSequence frames, ExecutorService decodeStage) {
+        try {
+            decodeStage.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            frames.close();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // Nothing is left to read.
+        }
+    }
+
+    private Image decode(FrameSequence frames) {
+        long stageStart = System.nanoTime();
+        try {
+            return frames.nextFrame();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            decodeNanos.addAndGet(System.nanoTime() - stageStart);
+        }
+    }
+
+    private BrightnessMatrix measure(Image image) {
+        long stageStart = System.nanoTime();
+        try {
+            BrightnessMatrix brightnessMatrix =
+                    imageProcessor.updateBrightnessMatrix(previousImage, previousMatrix, image, resolution);
+            previousImage = image;
+            previousMatrix = brightnessMatrix;
+            return brightnessMatrix;
+        } finally {
+            brightnessNanos.addAndGet(System.nanoTime() - stageStart);
+        }
+    }
+
+    private char[][] render(BrightnessMatrix brightnessMatrix) {
+        long stageStart = System.nanoTime();
+        try {
+            return new AsciiArtAlgorithm(null, resolution, subImgCharMatcher, brightnessMatrix).run();
+        } finally {
+            renderNanos.addAndGet(System.nanoTime() - stageStart);
+        }
+    }
+
+    private void report(int numFrames, long elapsedNanos) {
+        System.out.printf(SUMMARY_MESSAGE, numFrames, TimeUnit.NANOSECONDS.toMillis(elapsedNanos),
+                numFrames * NANOS_PER_SECOND / Math.max(1, elapsedNanos));
+        if (numFrames > 0) {
+            double perFrame = NANOS_PER_MILLI * numFrames;
+            System.out.printf(STAGES_MESSAGE, decodeNanos.get() / perFrame, brightnessNanos.get() / perFrame,
+                    renderNanos.get() / perFrame, outputNanos / perFrame);
+        }
+    }
+}
@@ -5,19 +5,26 @@ import image.Image;
 import image.ImageProcessor;
 import image_char_matching.SubImgCharMatcher;
 
-import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 
 /**
  * The AsciiArtAlgorithm class is responsible for generating an ASCII art representation
  * of an image by dividing it into sub-images, calculating their brightness, and matching
  * the brightness to a set of characters.
+ * Given an executor, the characters are matched in bands of rows on several threads; the result is
+ * the same as matching them one by one.
  */
 public class AsciiArtAlgorithm {
-    private Image image; // The input image to be converted into ASCII art.
+    private static final int ROWS_PER_TASK = 16; // The number of rows matched by a single task.
+
+    private final Image image; // The input image to be converted into ASCII art.
     private final ImageProcessor imageProcessor; // Used for processing the image.
     private final int resolution; // The resolution for dividing the image into sub-images.
     private final SubImgCharMatcher subImgCharMatcher; // Matches characters to brightness levels.
-    private final ArrayList<BrightnessMatrix> brightnessMatrices; // Stores precomputed brightness matrices.
+    private BrightnessMatrix brightnessMatrix; // The precomputed brightness matrix, or null.
+    private final Executor executor; // Runs the matching of bands of rows, or null to match sequentially.
 
     /**
      * Constructs an AsciiArtAlgorithm instance.
@@ -25,46 +32,101 @@ public class AsciiArtAlgorithm {
      * @param image              The image to be converted into ASCII art.
      * @param resolution         The resolution for dividing the image into sub-images.
      * @param subImgCharMatcher  The character matcher for mapping brightness to characters.
-     * @param brightnessMatrices A list of precomputed brightness matrices.
+     * @param brightnessMatrix   The precomputed brightness matrix of the image at the given resolution,
+     *                           or null to calculate it in run.
+     */
+    public AsciiArtAlgorithm(Image image, int resolution, SubImgCharMatcher subImgCharMatcher,
+                             BrightnessMatrix brightnessMatrix) {
+        this(image, resolution, subImgCharMatcher, brightnessMatrix, null);
+    }
+
+    /**
+     * Constructs an AsciiArtAlgorithm instance that matches characters on the given executor.
+     * The executor must not be one whose threads are all busy waiting for this algorithm,
+     * since run waits for the tasks it submits.
+     *
+     * @param image              The image to be converted into ASCII art.
+     * @param resolution         The resolution for dividing the image into sub-images.
+     * @param subImgCharMatcher  The character matcher for mapping brightness to characters.
+     * @param brightnessMatrix   The precomputed brightness matrix of the image at the given resolution,
+     *                           or null to calculate it in run.
+     * @param executor           The executor matching bands of rows, or null to match on the calling thread.
      */
     public AsciiArtAlgorithm(Image image, int resolution, SubImgCharMatcher subImgCharMatcher,
-                             ArrayList<BrightnessMatrix> brightnessMatrices) {
+                             BrightnessMatrix brightnessMatrix, Executor executor) {
         this.image = image;
         this.imageProcessor = new ImageProcessor();
         this.resolution = resolution;
         this.subImgCharMatcher = subImgCharMatcher;
-        this.brightnessMatrices = brightnessMatrices;
+        this.brightnessMatrix = brightnessMatrix;
+        this.executor = executor;
     }
 
     /**
      * Runs the ASCII art generation algorithm.
      *
      * Steps:
-     * 1. If no brightness matrix exists, it calculates and stores one.
-     * 2. Divides the image into sub-images of the given resolution.
-     * 3. Computes brightness for each sub-image and maps it to a corresponding character.
+     * 1. If no brightness matrix was given, it divides the image into sub-images of the given resolution,
+     *    calculates their brightness and stores the resulting matrix.
+     * 2. Maps the brightness of each sub-image to a corresponding character, in bands of rows on the
+     *    executor if one was given.
      *
      * @return A 2D character array representing the ASCII art.
      */
     public char[][] run() {
-        // If no brightness matrix was calculated, calculate and add to the array.
-        if (brightnessMatrices.isEmpty()) {
-            // Pad the image:
-            this.image = imageProcessor.extendImage(image);
-            // Divide the image according to the given resolution:
-            Image[][] subImages = imageProcessor.divideImage(image, resolution);
-            // Create a brightness matrix:
-            brightnessMatrices.add(new BrightnessMatrix(subImages));
+        // If no brightness matrix was calculated, calculate and keep it.
+        if (brightnessMatrix == null) {
+            // Pad and divide the image according to the given resolution, and create a brightness matrix:
+            brightnessMatrix = imageProcessor.createBrightnessMatrix(image, resolution);
         }
 
+        // Match the whole frame against one snapshot, even if the matcher changes meanwhile:
+        SubImgCharMatcher.Snapshot matcher = subImgCharMatcher.getSnapshot();
+
         // Create ASCII art matrix:
         char[][] newImage = new char[resolution][resolution];
-        for (int row = 0; row < resolution; row++) {
-            for (int col = 0; col < resolution; col++) {
-                double brightness = brightnessMatrices.get(brightnessMatrices.size() - 1).getPixel(row, col);
-                newImage[row][col] = subImgCharMatcher.getCharByImageBrightness(brightness);
+        if (executor == null || resolution <= ROWS_PER_TASK) {
+            matchRows(matcher, brightnessMatrix, newImage, 0, resolution);
+            return newImage;
+        }
+
+        BrightnessMatrix matrix = brightnessMatrix;
+        int numBands = (resolution + ROWS_PER_TASK - 1) / ROWS_PER_TASK;
+        CompletableFuture<?>[] bands = new CompletableFuture<?>[numBands];
+        for (int band = 0; band < bands.length; band++) {
+            int fromRow = band * ROWS_PER_TASK;
+            int toRow = Math.min(resolution, fromRow + ROWS_PER_TASK);
+            bands[band] = CompletableFuture.runAsync(
+                    () -> matchRows(matcher, matrix, newImage, fromRow, toRow), executor);
+        }
+        try {
+            CompletableFuture.allOf(bands).join();
+        } catch (CompletionException e) {
+            // Rethrow the failure of the band itself, as the sequential path would.
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
             }
+            throw e;
         }
         return newImage;
     }
+
+    /**
+     * Matches a character to the brightness of every sub-image in a range of rows.
+     *
+     * @param matcher          The snapshot of the character matcher to match against.
+     * @param brightnessMatrix The brightness of every sub-image.
+     * @param newImage         The ASCII art matrix to write the characters to.
+     * @param fromRow          The first row to match.
+     * @param toRow            The row after the last row to match.
+     */
+    private void matchRows(SubImgCharMatcher.Snapshot matcher, BrightnessMatrix brightnessMatrix,
+                           char[][] newImage, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            for (int col = 0; col < resolution; col++) {
+                double brightness = brightnessMatrix.getPixel(row, col);
+                newImage[row][col] = matcher.getCharByImageBrightness(brightness);
+            }
+        }
+    }
 }
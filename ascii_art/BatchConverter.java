@@ -0,0 +1,363 @@
+package ascii_art;
+
+import ascii_art.exceptions.AsciiArtExceptions;
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import image.BrightnessMatrix;
+import image.Fingerprint;
+import image.Image;
+import image.ImageProcessor;
+import image.StreamingBrightnessReader;
+import image_char_matching.SubImgCharMatcher;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Converts many images to ASCII art in a single, non-interactive run.
+ * Images are converted by a fixed pool of worker threads fed through a bounded queue, all sharing one
+ * SubImgCharMatcher, so the JVM start-up and the glyph rendering are paid once for the whole batch.
+ *
+ * Usage (through Shell.main):
+ * --batch source resolution charset format [outputDir]
+ * - source: a directory (all the images in it), or a glob over file names in a directory (e.g. "in/*.jpg").
+ * - resolution: the number of characters in a row.
+ * - charset: the characters to use, or "all" for all printable ASCII characters.
+ * - format: "console", "html" or "html.gz".
+ * - outputDir: where HTML files are written (default: the current directory).
+ * Images larger than STREAMING_MIN_PIXELS are never decoded whole: their brightness is calculated
+ * row by row (or band by band) by a StreamingBrightnessReader.
+ * Inputs are recognised by the fingerprints of their bytes, so an image that appears several times in the
+ * batch (under any names) is decoded and measured once; its copies wait for the first one, or find its
+ * brightness matrix in a BrightnessCache, and only the character matching and output are repeated.
+ */
+public class BatchConverter {
+    /**
+     * The first command-line argument selecting batch mode.
+     */
+    public static final String BATCH_FLAG = "--batch";
+    private static final String USAGE_ERROR =
+            "Usage: --batch <directory|glob> <resolution> <charset|all> <console|html|html.gz> [outputDir]";
+    private static final String INVALID_RESOLUTION_ERROR = "Resolution must be a positive integer.";
+    private static final String INVALID_FORMAT_ERROR = "Format must be console, html or html.gz.";
+    private static final String CHARSET_TOO_SMALL_ERROR = "Charset must contain at least 2 characters.";
+    private static final String OUTPUT_DIR_ERROR = "Cannot create the output directory ";
+    private static final String NO_INPUTS_ERROR = "No images found in ";
+    private static final String CONVERSION_FAILED_MESSAGE = "Failed to convert %s: %s%n";
+    private static final String SUMMARY_MESSAGE = "Converted %d of %d images in %d ms.%n";
+    private static final String DUPLICATES_MESSAGE = "%d images were duplicates of others.%n";
+    private static final String CONSOLE_HEADER = "%s:%n";
+    private static final String FORMAT_CONSOLE = "console";
+    private static final String FORMAT_HTML = "html";
+    private static final String FORMAT_HTML_GZ = "html.gz";
+    private static final String ALL_CHARS = "all";
+    private static final String GLOB_PREFIX = "glob:";
+    private static final String GLOB_CHARS = "*?[{";
+    private static final String FONT_NAME = "Courier New";
+    private static final String CURRENT_DIRECTORY = ".";
+    private static final char FIRST_PRINTABLE_CHAR = ' ';
+    private static final char LAST_PRINTABLE_CHAR = '~';
+    private static final int MIN_CHARSET_SIZE = 2;
+    private static final int MIN_ARGS = 5;
+    private static final int MAX_ARGS = 6;
+    private static final int QUEUED_TASKS_PER_THREAD = 2;
+    private static final long STREAMING_MIN_PIXELS = 64L * 1024 * 1024; // 256MB of packed pixels.
+    private static final int SUCCESS = 0;
+    private static final int FAILURE = 1;
+
+    private final int resolution;
+    private final SubImgCharMatcher subImgCharMatcher; // Shared by all the workers, which read its snapshots.
+    private final String format;
+    private final Path outputDir;
+    private final int numThreads;
+    private final ConsoleAsciiOutput consoleAsciiOutput; // Guarded by itself.
+    private final BrightnessCache brightnessCache; // The matrices of images already measured.
+    // The matrices being calculated, by the fingerprint of their image:
+    private final ConcurrentHashMap<Long, CompletableFuture<BrightnessMatrix>> calculations;
+    private final AtomicInteger duplicates; // The number of inputs that were not measured again.
+
+    /**
+     * Constructs a batch converter.
+     *
+     * @param resolution The number of characters in a row of every image.
+     * @param charset    The characters to convert to.
+     * @param format     The output format: "console", "html" or "html.gz".
+     * @param outputDir  The directory HTML files are written to.
+     * @param numThreads The number of worker threads.
+     */
+    public BatchConverter(int resolution, char[] charset, String format, Path outputDir, int numThreads) {
+        this.resolution = resolution;
+        this.subImgCharMatcher = new SubImgCharMatcher(charset);
+        this.format = format;
+        this.outputDir = outputDir;
+        this.numThreads = numThreads;
+        this.consoleAsciiOutput = new ConsoleAsciiOutput();
+        this.brightnessCache = new BrightnessCache();
+        this.calculations = new ConcurrentHashMap<>();
+        this.duplicates = new AtomicInteger();
+    }
+
+    /**
+     * Runs a batch conversion from command-line arguments.
+     *
+     * @param args The command-line arguments, starting with BATCH_FLAG.
+     * @return The exit status: 0 if every image was converted, 1 otherwise.
+     * @throws AsciiArtExceptions If the arguments are invalid.
+     */
+    public static int run(String[] args) throws AsciiArtExceptions {
+        if (args.length < MIN_ARGS || args.length > MAX_ARGS) {
+            throw new AsciiArtExceptions(USAGE_ERROR);
+        }
+        int resolution;
+        try {
+            resolution = Integer.parseInt(args[2]);
+        } catch (NumberFormatException e) {
+            throw new AsciiArtExceptions(INVALID_RESOLUTION_ERROR);
+        }
+        if (resolution <= 0) {
+            throw new AsciiArtExceptions(INVALID_RESOLUTION_ERROR);
+        }
+        String format = args[4];
+        if (!format.equals(FORMAT_CONSOLE) && !format.equals(FORMAT_HTML) && !format.equals(FORMAT_HTML_GZ)) {
+            throw new AsciiArtExceptions(INVALID_FORMAT_ERROR);
+        }
+        char[] charset = parseCharset(args[3]);
+        if (charset.length < MIN_CHARSET_SIZE) {
+            throw new AsciiArtExceptions(CHARSET_TOO_SMALL_ERROR);
+        }
+        Path outputDir = Paths.get(args.length == MAX_ARGS ? args[5] : CURRENT_DIRECTORY);
+        try {
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            throw new AsciiArtExceptions(OUTPUT_DIR_ERROR + outputDir);
+        }
+
+        BatchConverter converter = new BatchConverter(resolution, charset, format, outputDir,
+                Runtime.getRuntime().availableProcessors());
+        return converter.convert(args[1]);
+    }
+
+    /**
+     * Converts all the images of a directory or glob.
+     *
+     * @param source A directory, or a glob over file names in a directory.
+     * @return The exit status: 0 if every image was converted, 1 otherwise.
+     */
+    public int convert(String source) {
+        List<Path> inputs;
+        try {
+            inputs = listInputs(source);
+        } catch (IOException e) {
+            System.err.println(NO_INPUTS_ERROR + source);
+            return FAILURE;
+        }
+        if (inputs.isEmpty()) {
+            System.err.println(NO_INPUTS_ERROR + source);
+            return FAILURE;
+        }
+
+        long start = System.nanoTime();
+        AtomicInteger converted = new AtomicInteger();
+        // A bounded queue; when it is full, the submitting thread converts the image itself.
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(numThreads, numThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(numThreads * QUEUED_TASKS_PER_THREAD),
+                new ThreadPoolExecutor.CallerRunsPolicy());
+        for (Path input : inputs) {
+            executor.execute(() -> {
+                if (convertOne(input)) {
+                    converted.incrementAndGet();
+                }
+            });
+        }
+        executor.shutdown();
+        try {
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return FAILURE;
+        }
+
+        System.out.printf(SUMMARY_MESSAGE, converted.get(), inputs.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        if (duplicates.get() > 0) {
+            System.out.printf(DUPLICATES_MESSAGE, duplicates.get());
+        }
+        return converted.get() == inputs.size() ? SUCCESS : FAILURE;
+    }
+
+    /**
+     * Converts a single image and writes it out. Failures are reported and do not stop the batch.
+     *
+     * @param input The image file.
+     * @return True if the image was converted.
+     */
+    private boolean convertOne(Path input) {
+        try {
+            BrightnessMatrix brightnessMatrix = getBrightnessMatrix(input.toString());
+            char[][] chars = new AsciiArtAlgorithm(null, resolution, subImgCharMatcher, brightnessMatrix).run();
+            write(input, chars);
+            return true;
+        } catch (IOException | AsciiArtExceptions e) {
+            System.err.printf(CONVERSION_FAILED_MESSAGE, input, e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Returns the brightness matrix of an image file, calculating it only if no file of the same bytes
+     * was measured or is being measured.
+     *
+     * @param filename The image file.
+     * @return The brightness matrix of the image.
+     * @throws IOException If the image cannot be read.
+     */
+    private BrightnessMatrix getBrightnessMatrix(String filename) throws IOException {
+        long fingerprint = Fingerprint.ofFile(filename);
+        CompletableFuture<BrightnessMatrix> calculation = new CompletableFuture<>();
+        CompletableFuture<BrightnessMatrix> running = calculations.putIfAbsent(fingerprint, calculation);
+        if (running != null) {
+            duplicates.incrementAndGet();
+            return await(running);
+        }
+        try {
+            BrightnessMatrix brightnessMatrix = brightnessCache.get(fingerprint, resolution);
+            if (brightnessMatrix != null) {
+                duplicates.incrementAndGet();
+            } else {
+                brightnessMatrix = calculateBrightnessMatrix(filename);
+                brightnessCache.put(fingerprint, resolution, brightnessMatrix);
+            }
+            calculation.complete(brightnessMatrix);
+            return brightnessMatrix;
+        } catch (IOException | RuntimeException e) {
+            calculation.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Later copies find the matrix in the cache.
+            calculations.remove(fingerprint);
+        }
+    }
+
+    private BrightnessMatrix calculateBrightnessMatrix(String filename) throws IOException {
+        if (StreamingBrightnessReader.countPixels(filename) > STREAMING_MIN_PIXELS) {
+            // Never decoded whole.
+            return new StreamingBrightnessReader().createBrightnessMatrix(filename, resolution);
+        }
+        return new ImageProcessor().createBrightnessMatrix(new Image(filename), resolution);
+    }
+
+    /**
+     * Waits for the calculation of a matrix by another worker, failing the same way it did.
+     */
+    private static BrightnessMatrix await(CompletableFuture<BrightnessMatrix> calculation) throws IOException {
+        try {
+            return calculation.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the chars of an image to the console, or to their file in the output directory.
+     *
+     * @param input The image file.
+     * @param chars The chars of the image.
+     * @throws IOException If the output file cannot be written.
+     */
+    private void write(Path input, char[][] chars) throws IOException {
+        if (format.equals(FORMAT_CONSOLE)) {
+            synchronized (consoleAsciiOutput) {
+                System.out.printf(CONSOLE_HEADER, input);
+                consoleAsciiOutput.out(chars);
+            }
+            return;
+        }
+        String fileName = input.getFileName() + "." + format;
+        HtmlAsciiOutput output = new HtmlAsciiOutput(outputDir.resolve(fileName).toString(), FONT_NAME,
+                format.equals(FORMAT_HTML_GZ));
+        output.write(chars);
+    }
+
+    /**
+     * Lists the image files of a directory, or the files of a directory matching a glob, in name order.
+     *
+     * @param source A directory, or a glob over file names in a directory.
+     * @return The matching image files.
+     * @throws IOException If the directory cannot be read.
+     */
+    private static List<Path> listInputs(String source) throws IOException {
+        Path directory;
+        PathMatcher matcher;
+        if (containsGlob(source)) {
+            Path pattern = Paths.get(source);
+            directory = pattern.getParent() == null ? Paths.get(CURRENT_DIRECTORY) : pattern.getParent();
+            matcher = FileSystems.getDefault().getPathMatcher(GLOB_PREFIX + pattern.getFileName());
+        } else {
+            directory = Paths.get(source);
+            List<String> suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+            matcher = path -> {
+                String name = path.toString();
+                int dot = name.lastIndexOf('.');
+                return dot >= 0 && suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+            };
+        }
+
+        List<Path> inputs = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                if (Files.isRegularFile(entry) && matcher.matches(entry.getFileName())) {
+                    inputs.add(entry);
+                }
+            }
+        }
+        Collections.sort(inputs);
+        return inputs;
+    }
+
+    private static boolean containsGlob(String source) {
+        for (char c : GLOB_CHARS.toCharArray()) {
+            if (source.indexOf(c) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Parses the charset argument: either "all", or the characters themselves.
+     */
+    static char[] parseCharset(String charset) {
+        if (!charset.equals(ALL_CHARS)) {
+            return charset.toCharArray();
+        }
+        char[] allChars = new char[LAST_PRINTABLE_CHAR - FIRST_PRINTABLE_CHAR + 1];
+        for (int i = 0; i < allChars.length; i++) {
+            allChars[i] = (char) (FIRST_PRINTABLE_CHAR + i);
+        }
+        return allChars;
+    }
+}
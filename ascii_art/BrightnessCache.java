@@ -0,0 +1,166 @@
+package ascii_art;
+
+import image.BrightnessMatrix;
+import image.Image;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A bounded cache of BrightnessMatrix objects, keyed by image content and resolution.
+ * Images are identified by their fingerprints (see Image.getFingerprint), so an image reloaded, or
+ * decoded from a copy of its file, finds the matrices of the first one, and no image is kept alive by
+ * the cache.
+ * Entries are evicted in least-recently-used order once the total memory footprint of the cached
+ * matrices exceeds the cache's budget. Hits, misses and evictions are counted for diagnostics.
+ * All methods are synchronized, so one cache may be shared between threads.
+ */
+public class BrightnessCache {
+    /**
+     * The default memory budget of a cache, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 64L * 1024 * 1024;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.75f;
+    private static final String STATS_FORMAT =
+            "Brightness cache: %d entries, %d/%d bytes, %d hits, %d misses, %d evictions.";
+
+    private final long maxBytes; // The memory budget of the cached matrices.
+    private final LinkedHashMap<Key, BrightnessMatrix> entries; // Kept in access order, eldest first.
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    /**
+     * Constructs an empty cache with the default memory budget.
+     */
+    public BrightnessCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs an empty cache with the given memory budget.
+     *
+     * @param maxBytes The maximal total memory footprint of the cached matrices, in bytes.
+     */
+    public BrightnessCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(INITIAL_CAPACITY, LOAD_FACTOR, true);
+    }
+
+    /**
+     * Looks up the brightness matrix of an image at a resolution, marking it as recently used.
+     *
+     * @param image      The image of the matrix.
+     * @param resolution The resolution of the matrix.
+     * @return The cached matrix, or null if it is not in the cache.
+     */
+    public BrightnessMatrix get(Image image, int resolution) {
+        return get(image.getFingerprint(), resolution);
+    }
+
+    /**
+     * Looks up the brightness matrix of an image at a resolution, marking it as recently used.
+     *
+     * @param fingerprint The fingerprint of the image of the matrix.
+     * @param resolution  The resolution of the matrix.
+     * @return The cached matrix, or null if it is not in the cache.
+     */
+    public synchronized BrightnessMatrix get(long fingerprint, int resolution) {
+        BrightnessMatrix matrix = entries.get(new Key(fingerprint, resolution));
+        if (matrix == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return matrix;
+    }
+
+    /**
+     * Tells whether the brightness matrix of an image at a resolution is cached, without counting a hit
+     * or a miss and without marking it as recently used.
+     *
+     * @param image      The image of the matrix.
+     * @param resolution The resolution of the matrix.
+     * @return True if the matrix is in the cache.
+     */
+    public synchronized boolean contains(Image image, int resolution) {
+        return entries.containsKey(new Key(image.getFingerprint(), resolution));
+    }
+
+    /**
+     * Adds the brightness matrix of an image at a resolution to the cache.
+     *
+     * @param image      The image of the matrix.
+     * @param resolution The resolution of the matrix.
+     * @param matrix     The matrix to cache.
+     */
+    public void put(Image image, int resolution, BrightnessMatrix matrix) {
+        put(image.getFingerprint(), resolution, matrix);
+    }
+
+    /**
+     * Adds the brightness matrix of an image at a resolution to the cache, evicting the least
+     * recently used matrices as needed. A matrix larger than the whole budget is not cached.
+     *
+     * @param fingerprint The fingerprint of the image of the matrix.
+     * @param resolution  The resolution of the matrix.
+     * @param matrix      The matrix to cache.
+     */
+    public synchronized void put(long fingerprint, int resolution, BrightnessMatrix matrix) {
+        long footprint = matrix.getMemoryFootprint();
+        if (footprint > maxBytes) {
+            return;
+        }
+        BrightnessMatrix previous = entries.put(new Key(fingerprint, resolution), matrix);
+        if (previous != null) {
+            usedBytes -= previous.getMemoryFootprint();
+        }
+        usedBytes += footprint;
+
+        Iterator<Map.Entry<Key, BrightnessMatrix>> eldest = entries.entrySet().iterator();
+        while (usedBytes > maxBytes) {
+            usedBytes -= eldest.next().getValue().getMemoryFootprint();
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    /**
+     * Returns a one-line summary of the cache's size and counters.
+     *
+     * @return The cache statistics.
+     */
+    public synchronized String getStats() {
+        return String.format(STATS_FORMAT, entries.size(), usedBytes, maxBytes, hits, misses, evictions);
+    }
+
+    /**
+     * Identifies a cached matrix by the fingerprint of its image and its resolution.
+     */
+    private static class Key {
+        private final long fingerprint;
+        private final int resolution;
+
+        Key(long fingerprint, int resolution) {
+            this.fingerprint = fingerprint;
+            this.resolution = resolution;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return this.fingerprint == key.fingerprint && this.resolution == key.resolution;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Long.hashCode(fingerprint) + resolution;
+        }
+    }
+}
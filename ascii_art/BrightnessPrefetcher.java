@@ -0,0 +1,120 @@
+package ascii_art;
+
+import image.BrightnessMatrix;
+import image.Image;
+import image.ImageProcessor;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Calculates brightness matrices the user is likely to ask for next (such as the neighbouring
+ * resolutions of the last one) on a low-priority background thread, and puts them in a BrightnessCache.
+ * Work for an image other than the latest one, or for resolutions no longer expected, is cancelled
+ * before it starts. A matrix does not depend on the charset, so charset changes never cancel work.
+ * Not thread-safe: meant to be called from the shell's thread only.
+ */
+class BrightnessPrefetcher {
+    private static final String THREAD_NAME = "brightness-prefetcher";
+
+    private final BrightnessCache brightnessCache;
+    private final ImageProcessor imageProcessor; // Sequential, to stay out of the way of the shell.
+    private final ExecutorService executor;
+    private final Map<Integer, Future<BrightnessMatrix>> pending; // Submitted work, by resolution.
+    private Image image; // The image of the pending work.
+
+    /**
+     * Constructs a prefetcher filling the given cache.
+     *
+     * @param brightnessCache The cache calculated matrices are put in.
+     */
+    BrightnessPrefetcher(BrightnessCache brightnessCache) {
+        this.brightnessCache = brightnessCache;
+        this.imageProcessor = new ImageProcessor();
+        this.executor = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, THREAD_NAME);
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.pending = new HashMap<>();
+    }
+
+    /**
+     * Starts calculating the brightness matrices of an image at the given resolutions, unless they are
+     * cached or already being calculated. Work queued for other images or resolutions is cancelled.
+     *
+     * @param image       The image.
+     * @param resolutions The resolutions to calculate.
+     */
+    void prefetch(Image image, int... resolutions) {
+        if (image != this.image) {
+            cancelAll();
+            this.image = image;
+        }
+        Iterator<Map.Entry<Integer, Future<BrightnessMatrix>>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Integer, Future<BrightnessMatrix>> entry = entries.next();
+            if (!contains(resolutions, entry.getKey())) {
+                entry.getValue().cancel(false);
+                entries.remove();
+            }
+        }
+        for (int resolution : resolutions) {
+            if (!pending.containsKey(resolution) && !brightnessCache.contains(image, resolution)) {
+                pending.put(resolution, executor.submit(() -> {
+                    BrightnessMatrix matrix = imageProcessor.createBrightnessMatrix(image, resolution);
+                    brightnessCache.put(image, resolution, matrix);
+                    return matrix;
+                }));
+            }
+        }
+    }
+
+    /**
+     * Takes over prefetched work for a matrix about to be calculated in the foreground: if its calculation
+     * has started, waits for it; if it is still queued, cancels it.
+     *
+     * @param image      The image.
+     * @param resolution The resolution.
+     * @return The prefetched matrix, or null if it has to be calculated by the caller.
+     */
+    BrightnessMatrix take(Image image, int resolution) {
+        Future<BrightnessMatrix> future = image == this.image ? pending.remove(resolution) : null;
+        if (future == null || future.cancel(false)) {
+            return null;
+        }
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null; // The caller calculates it again and reports the error.
+        }
+    }
+
+    /**
+     * Cancels all the work that has not started yet.
+     */
+    void cancelAll() {
+        for (Future<BrightnessMatrix> future : pending.values()) {
+            future.cancel(false);
+        }
+        pending.clear();
+    }
+
+    private static boolean contains(int[] values, int value) {
+        for (int element : values) {
+            if (element == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -4,16 +4,21 @@ import ascii_art.exceptions.*;
 import ascii_output.ConsoleAsciiOutput;
 import ascii_output.HtmlAsciiOutput;
 import image.BrightnessMatrix;
+import image.BrightnessStore;
 import image.Image;
+import image.ImageFile;
 import image.ImageProcessor;
+import image.SubsampledBrightnessReader;
 import image_char_matching.SubImgCharMatcher;
 
 import java.io.BufferedWriter;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.util.ArrayList;
+import java.nio.file.Paths;
 import java.util.SortedSet;
 import java.util.TreeSet;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 
 
 /**
@@ -29,9 +34,10 @@ import java.util.TreeSet;
  * - output [console/html]: Sets output method
  * - round: Sets rounding method for brightness calculations
  * - asciiArt: Generates and displays ASCII art
+ * - stats: Displays the brightness cache statistics
  *
  * Features:
- * - Caches brightness matrices using the Memento pattern for performance
+ * - Caches brightness matrices per image and resolution in a bounded LRU cache for performance
  * - Supports both console and HTML output formats
  * - Manages a sorted set of characters for ASCII art generation
  * - Provides dynamic resolution control with bounds checking
@@ -49,6 +55,11 @@ public class Shell {
     private static final char DEFAULT_CHARS_START = '0';
     private static final char DEFAULT_CHAR_END = '9';
     private static final int DEFAULT_RESOLUTION = 2;
+    private static final String USER_HOME_PROPERTY = "user.home";
+    private static final String STORE_DIRECTORY = ".ascii_art";
+    private static final String STORE_SUBDIRECTORY = "brightness";
+    // The first console render of images of at least this many pixels is estimated from a subsampled decode:
+    private static final long SUBSAMPLE_MIN_PIXELS = 16L * 1024 * 1024;
     
     private static final String PREFIX_MESSAGE = ">>> ";
     private static final String EXIT_MESSAGE = "exit"; // Rotem - Done
@@ -59,6 +70,7 @@ public class Shell {
     private static final String ROUND_MESSAGE = "round"; // Maayan
     private static final String OUTPUT_MESSAGE = "output"; // Rotem - Done
     private static final String ASCII_ART_MESSAGE = "asciiArt"; // Rotem - Done
+    private static final String STATS_MESSAGE = "stats";
     private static final String WRONG_NUM_ARGS_ERROR =
             "Wrong number of arguments. Should get 1 argument: imagePath.";
     private static final int ARGS_NUM = 1;
@@ -75,6 +87,7 @@ public class Shell {
     private static final String OUTPUT_INCORRECT_FORMAT_MESSAGE =
             "Did not change output method due to incorrect format.";
     private static final String FAILS_TO_OPEN_IMAGE_MESSAGE = "Failed to open the image";
+    private static final String NO_IMAGE_MESSAGE = "Did not execute. Failed to open the image";
     private static final String INVALID_COMMAND_MESSAGE = "Did not execute due to incorrect command.";
     private static final String INVALID_RES_MESSAGE =
             "Did not change resolution due to exceeding boundaries.";
@@ -85,22 +98,39 @@ public class Shell {
     private static final String IMAGE_PROCESSOR_ERROR_MESSAGE = "Error in processing the image: ";
     private static final String CHAR_MATCHER_ERROR_MESSAGE = "Error in SubImgCharMatcher: ";
     private static final String FILE_FONT_NAME = "New Courier";
+    private static final String ESTIMATED_RENDER_MESSAGE =
+            "(Estimated from a subsampled decode; the next asciiArt is exact.)";
     private static final int FAILURE = 1;
     private static final String WRONG_SIZE_SET_ERROR = "Did not execute. Charset is too small.";
     private static final String CHAR_FORMAT_REGEX = ".-.";
 
     // fields:
     /**
-     * A cached state of the BrightnessMatrix, its resolution, and the associated image.
-     * Used to avoid recalculating the matrix if the resolution and image remain unchanged.
+     * Pads and divides the image and calculates its brightness, on all available processors.
      */
-    private Memento memento;
+    private final ImageProcessor imageProcessor;
 
     /**
-     * A list of all generated BrightnessMatrix objects.
-     * Stores brightness data for multiple resolutions or states.
+     * Matches characters to sub-images in bands of rows, or null on a single processor.
      */
-    private ArrayList<BrightnessMatrix> brightnessMatrices;
+    private final Executor matchingExecutor;
+
+    /**
+     * A bounded cache of the BrightnessMatrix objects calculated so far, keyed by image content and resolution.
+     * Used to avoid recalculating a matrix when returning to a previously seen resolution.
+     */
+    private final BrightnessCache brightnessCache;
+
+    /**
+     * The brightness matrices calculated in previous runs, on disk, keyed by image content and resolution.
+     * Used to avoid decoding an image at all when its matrix at the requested resolution is stored.
+     */
+    private final BrightnessStore brightnessStore;
+
+    /**
+     * Fills the brightness cache in the background with the matrices of the neighbouring resolutions.
+     */
+    private final BrightnessPrefetcher brightnessPrefetcher;
 
     /**
      * The file path where the ASCII art output should be written.
@@ -108,6 +138,11 @@ public class Shell {
      */
     private String outputPath;
 
+    /**
+     * Writes ASCII art to the console, reusing its frame buffer between commands.
+     */
+    private final ConsoleAsciiOutput consoleAsciiOutput;
+
     /**
      * A sorted set of characters available for generating ASCII art.
      * Characters are stored in ascending order for consistency in brightness mapping.
@@ -121,10 +156,10 @@ public class Shell {
     private int resolution;
 
     /**
-     * The image being processed to generate ASCII art.
-     * Contains the pixel data of the input image.
+     * The image file being processed to generate ASCII art, or null if it could not be opened.
+     * Its size is read up front; its pixels are decoded in the background and waited for on first use.
      */
-    private Image image;
+    private ImageFile imageFile;
 
     /**
      * A utility class used for matching characters to image brightness levels.
@@ -141,7 +176,13 @@ public class Shell {
         this.outputPath = null;
         this.sortedChars = new TreeSet<>();
         this.resolution = DEFAULT_RESOLUTION;
-        this.brightnessMatrices = new ArrayList<BrightnessMatrix>();
+        this.brightnessCache = new BrightnessCache();
+        this.brightnessPrefetcher = new BrightnessPrefetcher(this.brightnessCache);
+        this.brightnessStore = new BrightnessStore(
+                Paths.get(System.getProperty(USER_HOME_PROPERTY), STORE_DIRECTORY, STORE_SUBDIRECTORY));
+        this.consoleAsciiOutput = new ConsoleAsciiOutput();
+        this.imageProcessor = new ImageProcessor(Runtime.getRuntime().availableProcessors());
+        this.matchingExecutor = Runtime.getRuntime().availableProcessors() > 1 ? ForkJoinPool.commonPool() : null;
         initializeDefaultChars();
         this.subImgCharMatcher = new SubImgCharMatcher(sortedSetToArray(sortedChars));
     }
@@ -165,8 +206,7 @@ public class Shell {
     private void printAsciiArt(char[][] finalImage) throws IOException {
         // print to the console:
         if (this.outputPath==null) {
-            ConsoleAsciiOutput consoleAsciiOutput = new ConsoleAsciiOutput();
-            consoleAsciiOutput.out(finalImage);
+            this.consoleAsciiOutput.out(finalImage);
         }
 
         // print to a file:
@@ -326,12 +366,11 @@ public class Shell {
      * @throws InputExceptions if the resolution adjustment exceeds boundaries or the format is invalid.
      */
     private void handleRes(String[] commandTokens) throws InputExceptions {
-        ImageProcessor imageProcessor = new ImageProcessor();
-        int extendedWidth = imageProcessor.extendImage(image).getWidth();
-        int extendedHeight = imageProcessor.extendImage(image).getHeight();
-
-        int maxRes = extendedWidth;
-        int minRes = Math.max(1, extendedWidth/extendedHeight);
+        if (this.imageFile == null) {
+            throw new InputExceptions(NO_IMAGE_MESSAGE);
+        }
+        int maxRes = getMaxRes();
+        int minRes = getMinRes();
 
         if (commandTokens.length > 1) {
             switch (commandTokens[1]) {
@@ -356,6 +395,23 @@ public class Shell {
         System.out.println("Resolution set to " + this.resolution + ".");
     }
 
+    /**
+     * Returns the highest resolution allowed for the current image: the width of the padded image.
+     * The padded size is known from the image header, without decoding the pixels.
+     */
+    private int getMaxRes() {
+        return ImageProcessor.extendDim(this.imageFile.getWidth());
+    }
+
+    /**
+     * Returns the lowest resolution allowed for the current image, at which sub-images are square.
+     */
+    private int getMinRes() {
+        int extendedWidth = ImageProcessor.extendDim(this.imageFile.getWidth());
+        int extendedHeight = ImageProcessor.extendDim(this.imageFile.getHeight());
+        return Math.max(1, extendedWidth/extendedHeight);
+    }
+
     // 2.6
     /**
      * Sets the output method for the ASCII art, either to the console or an HTML file.
@@ -402,39 +458,163 @@ public class Shell {
         if (sortedChars.size() <= 1) {
             throw new CharSetExceptions(WRONG_SIZE_SET_ERROR);
         }
+        long fingerprint = getFingerprint();
         // check if BrightnessMatrix needs to be calculated:
-        if (this.memento != null && memento.wasCalculated(this.resolution, this.image)) {
-            this.brightnessMatrices.add(memento.getMatrix());
-
-        } else {
-            // No matching cached matrix; create a new one and save it in the memento
-            BrightnessMatrix newMatrix = createBrightnessMatrix();
-            this.brightnessMatrices.add(newMatrix);
-            this.memento = new Memento(newMatrix, this.resolution, this.image);
+        BrightnessMatrix brightnessMatrix = this.brightnessCache.get(fingerprint, this.resolution);
+        boolean stored = false;
+        if (brightnessMatrix == null) {
+            // Not cached; read it from the store if a previous run calculated it, without decoding the image
+            brightnessMatrix = this.brightnessStore.get(fingerprint, this.resolution);
+            if (brightnessMatrix != null) {
+                stored = true;
+                this.brightnessCache.put(fingerprint, this.resolution, brightnessMatrix);
+            }
+        }
+        Image image = this.imageFile.getLoadedImage();
+        boolean estimated = false;
+        if (brightnessMatrix == null && image == null && canEstimate()) {
+            // The first render of a large image, to the console; estimate it from a subsampled decode, then
+            // decode the image in the background for the exact matrices
+            brightnessMatrix = estimateBrightnessMatrix();
+            estimated = brightnessMatrix != null;
+            this.imageFile.startLoading();
+        }
+        if (brightnessMatrix == null) {
+            image = loadImage();
+            // Keyed by the bytes actually decoded, in case the file changed since it was fingerprinted
+            fingerprint = image.getFingerprint();
+            // Not stored; take it over from the background if it is being calculated there
+            brightnessMatrix = this.brightnessPrefetcher.take(image, this.resolution);
+            if (brightnessMatrix == null) {
+                // No matching cached matrix; create a new one and save it in the cache
+                brightnessMatrix = createBrightnessMatrix(image);
+                this.brightnessCache.put(fingerprint, this.resolution, brightnessMatrix);
+            }
+        }
+        if (!stored && !estimated) {
+            // Keep it for later runs (does nothing if it is already stored)
+            this.brightnessStore.put(fingerprint, this.resolution, brightnessMatrix);
         }
 
         AsciiArtAlgorithm asciiArtAlgorithm =
-                new AsciiArtAlgorithm(this.image, this.resolution, this.subImgCharMatcher,
-                        this.brightnessMatrices);
+                new AsciiArtAlgorithm(image, this.resolution, this.subImgCharMatcher,
+                        brightnessMatrix, this.matchingExecutor);
         char[][] finalImage = asciiArtAlgorithm.run();
 
         printAsciiArt(finalImage);
+        if (estimated) {
+            System.out.println(ESTIMATED_RENDER_MESSAGE);
+        }
+        if (image != null) {
+            prefetchNeighbours(image);
+        }
     }
 
     /**
-     * Creates a BrightnessMatrix for the current image by processing and dividing it into sub-images
+     * Starts calculating, in the background, the brightness matrices of the resolutions that "res up"
+     * and "res down" would move to, so the next asciiArt after either finds its matrix in the cache.
+     *
+     * @param image The current image.
+     */
+    private void prefetchNeighbours(Image image) {
+        int up = this.resolution * RES_FACTOR_UP;
+        int down = this.resolution / RES_FACTOR_DOWN;
+        boolean canGoUp = up <= getMaxRes();
+        boolean canGoDown = down >= getMinRes();
+        if (canGoUp && canGoDown) {
+            this.brightnessPrefetcher.prefetch(image, up, down);
+        } else if (canGoUp) {
+            this.brightnessPrefetcher.prefetch(image, up);
+        } else if (canGoDown) {
+            this.brightnessPrefetcher.prefetch(image, down);
+        } else {
+            this.brightnessPrefetcher.cancelAll();
+        }
+    }
+
+    /**
+     * Prints the hit, miss and eviction counters of the brightness cache.
+     */
+    private void handleStats() {
+        System.out.println(this.brightnessCache.getStats());
+    }
+
+    /**
+     * Creates a BrightnessMatrix for the given image by processing and dividing it into sub-images
      * based on the current resolution.
      *
+     * @param image The current image.
      * @return A new BrightnessMatrix object.
      */
-    private BrightnessMatrix createBrightnessMatrix() {
-        ImageProcessor imageProcessor = new ImageProcessor();
-        // Padd:
-        Image newImage = imageProcessor.extendImage(this.image);
-        // Divide the image according to given resolution:
-        Image[][] subImages = imageProcessor.divideImage(newImage, this.resolution);
-        // Create BrightnessMatrix:
-        return new BrightnessMatrix(subImages);
+    private BrightnessMatrix createBrightnessMatrix(Image image) {
+        // Pad, divide according to the given resolution and sum from the image's summed-area table:
+        return this.imageProcessor.createBrightnessMatrix(image, this.resolution);
+    }
+
+    /**
+     * Tells whether the brightness matrix of the current image at the current resolution may be estimated
+     * from a subsampled decode: the output is the console (an HTML file is always exact), the image is
+     * large and its decoding has not started (so only its first render is estimated, and never while the
+     * full decode runs), and a sub-image is large enough to skip pixels.
+     */
+    private boolean canEstimate() {
+        if (this.outputPath != null || this.imageFile.isLoadingStarted()) {
+            return false;
+        }
+        long numPixels = (long) this.imageFile.getWidth() * this.imageFile.getHeight();
+        return numPixels >= SUBSAMPLE_MIN_PIXELS && SubsampledBrightnessReader.subsamplingFor(
+                this.imageFile.getWidth(), this.imageFile.getHeight(), this.resolution) > 1;
+    }
+
+    /**
+     * Estimates the brightness matrix of the current image at the current resolution from a subsampled
+     * decode. The estimate is neither cached nor stored, so the exact matrix replaces it once the image
+     * is decoded.
+     *
+     * @return The estimated matrix, or null if the subsampled decode failed.
+     */
+    private BrightnessMatrix estimateBrightnessMatrix() {
+        try {
+            return new SubsampledBrightnessReader().createBrightnessMatrix(this.imageFile.getFilename(),
+                    this.resolution);
+        } catch (IOException e) {
+            return null; // Decoded in full instead, which reports the failure.
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the current image: that of the decoded image once decoding started,
+     * otherwise that of the file's bytes, which is known without decoding it.
+     *
+     * @return The fingerprint of the current image.
+     * @throws InputExceptions If the image could not be opened or read.
+     */
+    private long getFingerprint() throws InputExceptions {
+        if (this.imageFile == null) {
+            throw new InputExceptions(NO_IMAGE_MESSAGE);
+        }
+        try {
+            return this.imageFile.getFingerprint();
+        } catch (IOException e) {
+            throw new InputExceptions(NO_IMAGE_MESSAGE + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the decoded current image, waiting for the background decoding if it is not done yet.
+     *
+     * @return The current image.
+     * @throws InputExceptions If the image could not be opened or decoded.
+     */
+    private Image loadImage() throws InputExceptions {
+        if (this.imageFile == null) {
+            throw new InputExceptions(NO_IMAGE_MESSAGE);
+        }
+        try {
+            return this.imageFile.getImage();
+        } catch (IOException e) {
+            throw new InputExceptions(NO_IMAGE_MESSAGE + ": " + e.getMessage());
+        }
     }
 
     /**
@@ -455,6 +635,7 @@ public class Shell {
      *   - "output": Sets the output method (console or HTML).
      *   - "round": Adjusts the rounding method for brightness calculations.
      *   - "asciiArt": Generates and outputs ASCII art based on the current configuration.
+     *   - "stats": Displays the brightness cache statistics.
      * - Invalid or unrecognized commands will result in error messages.
      *
      * Exception Handling:
@@ -468,7 +649,15 @@ public class Shell {
      */
     public void run(String imageName){
         try {
-            this.image = new Image(imageName);
+            // Only the header is read here; the pixels are decoded (and the file fingerprinted) while the
+            // user types, unless the image is large, in which case asciiArt looks its matrix up in the store
+            // first, and otherwise estimates it without the decoding competing with it.
+            ImageFile imageFile = new ImageFile(imageName);
+            long numPixels = (long) imageFile.getWidth() * imageFile.getHeight();
+            if (numPixels < SUBSAMPLE_MIN_PIXELS) {
+                imageFile.startLoading();
+            }
+            this.imageFile = imageFile;
         } catch (IOException e) {
             System.out.println(e + FAILS_TO_OPEN_IMAGE_MESSAGE);
         }
@@ -506,6 +695,9 @@ public class Shell {
                     case ASCII_ART_MESSAGE:
                         handleAsciiArt();
                         break;
+                    case STATS_MESSAGE:
+                        handleStats();
+                        break;
                     default:
                         throw new InputExceptions(INVALID_COMMAND_MESSAGE);
                 }
@@ -532,9 +724,17 @@ public class Shell {
     }
 
     /**
-     * The main method to run the program
+     * The main method to run the program.
+     * With BatchConverter.BATCH_FLAG as the first argument, converts many images non-interactively
+     * (see BatchConverter); otherwise runs the interactive shell on a single image.
      */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals(BatchConverter.BATCH_FLAG)) {
+            System.exit(BatchConverter.run(args));
+        }
+        if (args.length > 0 && args[0].equals(AnimationConverter.ANIMATE_FLAG)) {
+            System.exit(AnimationConverter.run(args));
+        }
         Shell shell = new Shell();
         if (args.length != ARGS_NUM) {
             throw new AsciiArtExceptions(WRONG_NUM_ARGS_ERROR);
@@ -542,50 +742,4 @@ public class Shell {
         String imagePath = args[0];
         shell.run(imagePath);
     }
-
-    /**
-     * The Memento class is part of the Memento design pattern, used to store the state of an object
-     * (specifically a BrightnessMatrix, its resolution, and the hash of an associated Image)
-     * so it can be restored later.
-     */
-    public static class Memento {
-        private final BrightnessMatrix matrix; // The brightness matrix associated with the image.
-        private final int resolution;         // The resolution of the saved brightness matrix.
-        private final int imageHash;          // A hash uniquely identifying the image.
-
-        /**
-         * Constructs a Memento object that captures the state of a BrightnessMatrix, its resolution,
-         * and the hash of an associated Image.
-         *
-         * @param matrix    The brightness matrix of the image.
-         * @param resolution The resolution at which the brightness matrix was calculated.
-         * @param image      The image whose state is being saved, identified by its hash.
-         */
-        public Memento(BrightnessMatrix matrix, int resolution, Image image) {
-            this.matrix = matrix;
-            this.resolution = resolution;
-            this.imageHash = image.hashCode();
-        }
-
-        /**
-         * Checks if the Memento matches the given resolution and image by comparing
-         * the resolution and the hash of the image.
-         *
-         * @param resolution The resolution to compare with the saved resolution.
-         * @param image      The image to compare with the saved image using its hash.
-         * @return True if the resolution and image hash match the saved state, otherwise false.
-         */
-        public boolean wasCalculated(int resolution, Image image) {
-            return this.resolution == resolution && this.imageHash == image.hashCode();
-        }
-
-        /**
-         * Retrieves the BrightnessMatrix stored in this Memento.
-         *
-         * @return The stored BrightnessMatrix object.
-         */
-        public BrightnessMatrix getMatrix() {
-            return this.matrix;
-        }
-    }
 }
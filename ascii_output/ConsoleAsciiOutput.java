@@ -2,15 +2,36 @@ package ascii_output;
 
 /**
  * Output a 2D array of chars to the console.
+ * The whole frame is rendered into a single char buffer, reused while the frame size stays the same,
+ * and printed with one write.
  * @author Dan Nirel
  */public class ConsoleAsciiOutput implements AsciiOutput{
+    private static final char SEPARATOR = ' ';
+    private static final char[] LINE_SEPARATOR = System.lineSeparator().toCharArray();
+
+    private char[] buffer = new char[0];
+
     @Override
     public void out(char[][] chars) {
+        int size = 0;
+        for (char[] row : chars) {
+            size += row.length * 2 + LINE_SEPARATOR.length;
+        }
+        if (buffer.length != size) {
+            buffer = new char[size];
+        }
+
+        int pos = 0;
         for (int y = 0; y < chars.length ; y++) {
             for (int x = 0; x < chars[y].length; x++) {
-                System.out.print(chars[y][x] + " ");
+                buffer[pos++] = chars[y][x];
+                buffer[pos++] = SEPARATOR;
+            }
+            for (char c : LINE_SEPARATOR) {
+                buffer[pos++] = c;
             }
-            System.out.println();
         }
+        System.out.print(buffer);
+        System.out.flush();
     }
 }
@@ -0,0 +1,105 @@
+package ascii_output;
+
+import java.util.Arrays;
+
+/**
+ * Output a sequence of 2D arrays of chars to an ANSI terminal, each one drawn over the previous one.
+ * Only the cells that changed since the previous frame are written, each run of changed cells after a
+ * cursor move, so a mostly static animation costs a small fraction of a full redraw.
+ * The first frame, and any frame of a different size, clears the screen and is drawn in full.
+ * Cells are laid out like ConsoleAsciiOutput's (every char followed by a space).
+ */
+public class DeltaConsoleAsciiOutput implements AsciiOutput {
+    private static final char SEPARATOR = ' ';
+    private static final String CLEAR_SCREEN = "\033[2J";
+    private static final String CONTROL_SEQUENCE = "\033[";
+    private static final char ROW_COL_SEPARATOR = ';';
+    private static final char CURSOR_POSITION = 'H';
+    private static final int CHARS_PER_CELL = 2;
+    // Runs of unchanged cells up to this long are written again rather than skipped with a cursor move,
+    // which takes about as many chars.
+    private static final int MAX_REWRITTEN_GAP = 4;
+
+    private char[][] previous; // The frame on the screen, or null before the first frame.
+    private final StringBuilder buffer = new StringBuilder();
+
+    @Override
+    public void out(char[][] chars) {
+        buffer.setLength(0);
+        if (!sameSize(chars)) {
+            buffer.append(CLEAR_SCREEN);
+            previous = new char[chars.length][];
+            for (int row = 0; row < chars.length; row++) {
+                appendRun(chars[row], row, 0, chars[row].length);
+                previous[row] = chars[row].clone();
+            }
+        } else {
+            for (int row = 0; row < chars.length; row++) {
+                appendChanges(previous[row], chars[row], row);
+                System.arraycopy(chars[row], 0, previous[row], 0, chars[row].length);
+            }
+        }
+        // Leave the cursor below the frame:
+        appendCursorMove(chars.length, 0);
+        System.out.print(buffer);
+        System.out.flush();
+    }
+
+    /**
+     * Appends the runs of cells of a row that differ from the previous frame.
+     *
+     * @param previousRow The row on the screen.
+     * @param row         The new row, of the same length.
+     * @param rowIndex    The index of the row in the frame.
+     */
+    private void appendChanges(char[] previousRow, char[] row, int rowIndex) {
+        int length = row.length;
+        int from = Arrays.mismatch(previousRow, row);
+        while (from >= 0) {
+            int to = from + 1;
+            int gap = 0;
+            for (int col = to; col < length && gap <= MAX_REWRITTEN_GAP; col++) {
+                if (previousRow[col] != row[col]) {
+                    to = col + 1;
+                    gap = 0;
+                } else {
+                    gap++;
+                }
+            }
+            appendRun(row, rowIndex, from, to);
+
+            int next = Arrays.mismatch(previousRow, to, length, row, to, length);
+            from = next < 0 ? -1 : to + next;
+        }
+    }
+
+    /**
+     * Appends a cursor move to a cell followed by a run of cells of a row.
+     */
+    private void appendRun(char[] row, int rowIndex, int from, int to) {
+        appendCursorMove(rowIndex, from * CHARS_PER_CELL);
+        for (int col = from; col < to; col++) {
+            buffer.append(row[col]).append(SEPARATOR);
+        }
+    }
+
+    /**
+     * Appends a cursor move to a (zero-based) row and column of the screen, without formatting a string.
+     */
+    private void appendCursorMove(int row, int col) {
+        buffer.append(CONTROL_SEQUENCE).append(row + 1).append(ROW_COL_SEPARATOR).append(col + 1)
+                .append(CURSOR_POSITION);
+    }
+
+    private boolean sameSize(char[][] chars) {
+        if (previous == null || previous.length != chars.length) {
+            return false;
+        }
+        for (int row = 0; row < chars.length; row++) {
+            if (previous[row].length != chars[row].length) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
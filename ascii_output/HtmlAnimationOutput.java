@@ -0,0 +1,144 @@
+package ascii_output;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.logging.Logger;
+
+/**
+ * Output a sequence of 2D arrays of chars as a single animated HTML page.
+ * Every call to out appends a frame to the file as it arrives, so frames are never held in memory;
+ * close writes the script that plays the frames in a loop at the given frame rate.
+ * All frames are expected to have the size of the first one.
+ */
+public class HtmlAnimationOutput implements AsciiOutput, Closeable {
+    private static final double BASE_LINE_SPACING = 0.8;
+    private static final double BASE_FONT_SIZE = 150.0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final double MILLIS_PER_SECOND = 1000.0;
+    private static final String FRAME_START = "<p class=\"frame\">\n";
+    private static final String FRAME_END = "</p>\n";
+
+    private final String filename;
+    private final String fontName;
+    private final double framesPerSecond;
+    private final HtmlEscaper escaper = new HtmlEscaper();
+    private Writer writer; // Opened with the first frame.
+    private boolean failed; // Set after a write fails, so the remaining frames are dropped.
+    private boolean closed;
+
+    /**
+     * Output to an animated HTML file.
+     *
+     * @param filename        The file to write.
+     * @param fontName        The font of the page.
+     * @param framesPerSecond The frame rate at which the page plays the frames.
+     */
+    public HtmlAnimationOutput(String filename, String fontName, double framesPerSecond) {
+        this.filename = filename;
+        this.fontName = fontName;
+        this.framesPerSecond = framesPerSecond;
+    }
+
+    @Override
+    public void out(char[][] chars) {
+        if (failed) {
+            return;
+        }
+        try {
+            write(chars);
+        } catch (IOException e) {
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+        }
+    }
+
+    /**
+     * Appends a frame like out, but reports a failure to write it instead of logging it.
+     *
+     * @param chars The chars of the frame.
+     * @throws IOException If the file cannot be opened or writing fails.
+     */
+    public void write(char[][] chars) throws IOException {
+        try {
+            if (writer == null) {
+                writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(filename)), BUFFER_SIZE);
+                writeHeader(chars[0].length);
+            }
+            String lineSeparator = System.lineSeparator();
+            writer.write(FRAME_START);
+            for (char[] row : chars) {
+                int length = escaper.escape(row);
+                writer.write(escaper.getBuffer(), 0, length);
+                writer.write(lineSeparator);
+            }
+            writer.write(FRAME_END);
+        } catch (IOException e) {
+            failed = true;
+            throw e;
+        }
+    }
+
+    /**
+     * Writes the script playing the frames and closes the file. Does nothing if no frame was written,
+     * or if the file was already closed.
+     *
+     * @throws IOException If writing the script or closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (writer == null || closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (!failed) {
+                writeFooter();
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private void writeHeader(int numCols) throws IOException {
+        writer.write(String.format(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<head>\n"+
+            "<style>\n"+
+            ".frame {"+
+                "\tdisplay:none;"+
+                "\tmargin:0;"+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;}\n"+
+            "</style>\n"+
+            "</head>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n",
+                fontName, BASE_FONT_SIZE/numCols, BASE_LINE_SPACING));
+    }
+
+    private void writeFooter() throws IOException {
+        writer.write(String.format(
+            "<script>\n"+
+            "var frames = document.getElementsByClassName(\"frame\");\n"+
+            "var current = 0;\n"+
+            "frames[0].style.display = \"block\";\n"+
+            "setInterval(function() {\n"+
+            "\tframes[current].style.display = \"none\";\n"+
+            "\tcurrent = (current + 1) %% frames.length;\n"+
+            "\tframes[current].style.display = \"block\";\n"+
+            "}, %d);\n"+
+            "</script>\n"+
+            "</body>\n"+
+            "</html>\n",
+                Math.round(MILLIS_PER_SECOND / framesPerSecond)));
+    }
+}
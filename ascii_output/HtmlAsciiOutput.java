@@ -1,63 +1,166 @@
 package ascii_output;
 
 import java.io.BufferedWriter;
-import java.io.FileWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * Output a 2D array of chars to an HTML file viewable in a web browser.
+ * The page can also be written to any OutputStream or WritableByteChannel, and can be gzip-compressed.
+ * Rows are escaped into a reusable buffer and written in bulk.
  * @author Dan Nirel
  */
 public class HtmlAsciiOutput implements AsciiOutput {
     private static final double BASE_LINE_SPACING = 0.8;
     private static final double BASE_FONT_SIZE = 150.0;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final String STREAM_TARGET_NAME = "output stream";
 
     private final String fontName;
-    private final String filename;
+    private final String filename; // The file to write, or null when writing to outputStream.
+    private final OutputStream outputStream; // The stream to write, or null when writing to filename.
+    private final boolean gzip;
+    private final HtmlEscaper escaper = new HtmlEscaper();
 
     public HtmlAsciiOutput(String filename, String fontName) {
+        this(filename, fontName, false);
+    }
+
+    /**
+     * Output to an HTML file.
+     *
+     * @param filename The file to write (overwritten on every output).
+     * @param fontName The font of the page.
+     * @param gzip     Whether to gzip-compress the file.
+     */
+    public HtmlAsciiOutput(String filename, String fontName, boolean gzip) {
         this.fontName = fontName;
         this.filename = filename;
+        this.outputStream = null;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Output to a stream. The stream is flushed after every output, but never closed.
+     *
+     * @param outputStream The stream to write.
+     * @param fontName     The font of the page.
+     * @param gzip         Whether to gzip-compress every page written.
+     */
+    public HtmlAsciiOutput(OutputStream outputStream, String fontName, boolean gzip) {
+        this.fontName = fontName;
+        this.filename = null;
+        this.outputStream = outputStream;
+        this.gzip = gzip;
+    }
+
+    /**
+     * Output to a channel. The channel is never closed.
+     *
+     * @param channel  The channel to write.
+     * @param fontName The font of the page.
+     * @param gzip     Whether to gzip-compress every page written.
+     */
+    public HtmlAsciiOutput(WritableByteChannel channel, String fontName, boolean gzip) {
+        this(Channels.newOutputStream(channel), fontName, gzip);
     }
 
     @Override
     public void out(char[][] chars) {
-        try(BufferedWriter writer = new BufferedWriter(new FileWriter(filename))) {
-            writer.write(String.format(
-                "<!DOCTYPE html>\n"+
-                "<html>\n"+
-                "<body style=\""+
-                    "\tCOLOR:#000000;"+
-                    "\tTEXT-ALIGN:center;"+
-                    "\tFONT-SIZE:1px;\">\n"+
-                "<p style=\""+
-                    "\twhite-space:pre;"+
-                    "\tFONT-FAMILY:%s;"+
-                    "\tFONT-SIZE:%frem;"+
-                    "\tLETTER-SPACING:0.15em;"+
-                    "\tLINE-HEIGHT:%fem;\">\n",
-                    fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
-
-            for(int y = 0 ; y < chars.length ; y++) {
-                for (int x = 0; x < chars[y].length ; x++) {
-                    String htmlRep;
-                    switch(chars[y][x]) {
-                        case '<': htmlRep = "&lt;";  break;
-                        case '>': htmlRep = "&gt;";  break;
-                        case '&': htmlRep = "&amp;"; break;
-                        default:  htmlRep = String.valueOf(chars[y][x]);
-                    }
-                    writer.write(htmlRep);
-                }
-                writer.newLine();
-            }
-            writer.write(
-                "</p>\n"+
-                "</body>\n"+
-                "</html>\n");
+        try {
+            write(chars);
         } catch(IOException e) {
-            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"", filename));
+            Logger.getGlobal().severe(String.format("Failed to write to \"%s\"",
+                    filename != null ? filename : STREAM_TARGET_NAME));
+        }
+    }
+
+    /**
+     * Outputs the chars like out, but reports a failure to write them instead of logging it.
+     *
+     * @param chars The chars to output.
+     * @throws IOException If the file cannot be opened or writing fails.
+     */
+    public void write(char[][] chars) throws IOException {
+        if (filename != null) {
+            write(chars, new FileOutputStream(filename), true);
+        } else {
+            write(chars, outputStream, false);
+        }
+    }
+
+    /**
+     * Writes the page to a stream, through a gzip stream if needed.
+     *
+     * @param chars       The chars to output.
+     * @param target      The stream to write.
+     * @param closeTarget Whether to close the stream when done (otherwise it is only flushed).
+     * @throws IOException If writing fails.
+     */
+    private void write(char[][] chars, OutputStream target, boolean closeTarget) throws IOException {
+        GZIPOutputStream gzipStream = null;
+        Writer writer;
+        try {
+            if (gzip) {
+                gzipStream = new GZIPOutputStream(target, BUFFER_SIZE);
+                writer = new BufferedWriter(new OutputStreamWriter(gzipStream), BUFFER_SIZE);
+            } else {
+                writer = new BufferedWriter(new OutputStreamWriter(target), BUFFER_SIZE);
+            }
+        } catch (IOException e) {
+            if (closeTarget) {
+                target.close();
+            }
+            throw e;
+        }
+
+        try {
+            writePage(chars, writer);
+            writer.flush();
+            if (gzipStream != null) {
+                gzipStream.finish();
+            }
+        } finally {
+            if (closeTarget) {
+                writer.close();
+            } else {
+                target.flush();
+            }
+        }
+    }
+
+    private void writePage(char[][] chars, Writer writer) throws IOException {
+        writer.write(String.format(
+            "<!DOCTYPE html>\n"+
+            "<html>\n"+
+            "<body style=\""+
+                "\tCOLOR:#000000;"+
+                "\tTEXT-ALIGN:center;"+
+                "\tFONT-SIZE:1px;\">\n"+
+            "<p style=\""+
+                "\twhite-space:pre;"+
+                "\tFONT-FAMILY:%s;"+
+                "\tFONT-SIZE:%frem;"+
+                "\tLETTER-SPACING:0.15em;"+
+                "\tLINE-HEIGHT:%fem;\">\n",
+                fontName, BASE_FONT_SIZE/chars[0].length, BASE_LINE_SPACING));
+
+        String lineSeparator = System.lineSeparator();
+        for(int y = 0 ; y < chars.length ; y++) {
+            int length = escaper.escape(chars[y]);
+            writer.write(escaper.getBuffer(), 0, length);
+            writer.write(lineSeparator);
         }
+        writer.write(
+            "</p>\n"+
+            "</body>\n"+
+            "</html>\n");
     }
 }
@@ -0,0 +1,50 @@
+package ascii_output;
+
+/**
+ * Escapes rows of chars for HTML into a reusable buffer, so rows can be written in bulk
+ * without allocating per row or per char.
+ */
+class HtmlEscaper {
+    private static final int MAX_ESCAPED_LENGTH = 5; // The length of "&amp;".
+    private static final char[] LESS_THAN = "&lt;".toCharArray();
+    private static final char[] GREATER_THAN = "&gt;".toCharArray();
+    private static final char[] AMPERSAND = "&amp;".toCharArray();
+
+    private char[] buffer = new char[0];
+
+    /**
+     * Escapes a row of chars into the buffer, growing it if needed.
+     *
+     * @param row The row to escape.
+     * @return The number of chars written to the buffer.
+     */
+    int escape(char[] row) {
+        if (buffer.length < row.length * MAX_ESCAPED_LENGTH) {
+            buffer = new char[row.length * MAX_ESCAPED_LENGTH];
+        }
+        int length = 0;
+        for (char c : row) {
+            switch(c) {
+                case '<': length = append(LESS_THAN, length);  break;
+                case '>': length = append(GREATER_THAN, length);  break;
+                case '&': length = append(AMPERSAND, length); break;
+                default:  buffer[length++] = c;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Returns the buffer holding the last escaped row. It may be replaced by the next call to escape.
+     *
+     * @return The buffer.
+     */
+    char[] getBuffer() {
+        return buffer;
+    }
+
+    private int append(char[] htmlRep, int length) {
+        System.arraycopy(htmlRep, 0, buffer, length, htmlRep.length);
+        return length + htmlRep.length;
+    }
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import ascii_art.AsciiArtAlgorithm;
+import image.BrightnessMatrix;
+import image.Image;
+import image.ImageProcessor;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the matching stage of AsciiArtAlgorithm, with the brightness matrix already computed,
+ * on the calling thread and in parallel bands of rows.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AsciiArtAlgorithmBenchmark {
+    private static final String SIZE = "4000x3000";
+    private static final String SEQUENTIAL = "sequential";
+
+    @Param({"256", "1024"})
+    public int resolution;
+
+    @Param({"sequential", "parallel"})
+    public String matching;
+
+    private Image image;
+    private SubImgCharMatcher subImgCharMatcher;
+    private BrightnessMatrix brightnessMatrix;
+    private Executor executor;
+
+    @Setup
+    public void setUp() {
+        image = SyntheticImages.image(SIZE);
+        subImgCharMatcher = new SubImgCharMatcher(SyntheticImages.charset(95));
+        brightnessMatrix = new ImageProcessor().createBrightnessMatrix(image, resolution);
+        executor = matching.equals(SEQUENTIAL) ? null : ForkJoinPool.commonPool();
+    }
+
+    @Benchmark
+    public char[][] run() {
+        return new AsciiArtAlgorithm(image, resolution, subImgCharMatcher, brightnessMatrix, executor).run();
+    }
+}
@@ -0,0 +1,72 @@
+package benchmarks;
+
+import ascii_output.ConsoleAsciiOutput;
+import ascii_output.HtmlAsciiOutput;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks writing a frame of characters to the console (redirected to a null stream) and as HTML,
+ * to a file (plain or gzip-compressed) or to a stream.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class AsciiOutputBenchmark {
+    private static final String FONT_NAME = "Courier New";
+
+    @Param({"64", "512"})
+    public int resolution;
+
+    private char[][] frame;
+    private PrintStream originalOut;
+    private File htmlFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        frame = new char[resolution][resolution];
+        char[] charset = SyntheticImages.charset(95);
+        for (int row = 0; row < resolution; row++) {
+            for (int col = 0; col < resolution; col++) {
+                frame[row][col] = charset[(row * 31 + col * 17) % charset.length];
+            }
+        }
+        originalOut = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        htmlFile = File.createTempFile("benchmark", ".html");
+        htmlFile.deleteOnExit();
+    }
+
+    @TearDown
+    public void tearDown() {
+        System.setOut(originalOut);
+    }
+
+    @Benchmark
+    public void console() {
+        new ConsoleAsciiOutput().out(frame);
+    }
+
+    @Benchmark
+    public void html() {
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT_NAME).out(frame);
+    }
+
+    @Benchmark
+    public void htmlGzip() {
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT_NAME, true).out(frame);
+    }
+
+    @Benchmark
+    public void htmlToStream() {
+        new HtmlAsciiOutput(OutputStream.nullOutputStream(), FONT_NAME, false).out(frame);
+    }
+}
@@ -0,0 +1,56 @@
+package benchmarks;
+
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks matching a whole frame of brightness values to characters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class CharMatcherBenchmark {
+    private static final long SEED = 7;
+
+    @Param({"10", "95"})
+    public int charsetSize;
+
+    @Param({"64", "512"})
+    public int resolution;
+
+    @Param({"abs", "up", "down"})
+    public String roundMethod;
+
+    private SubImgCharMatcher subImgCharMatcher;
+    private double[] brightness;
+
+    @Setup
+    public void setUp() {
+        subImgCharMatcher = new SubImgCharMatcher(SyntheticImages.charset(charsetSize));
+        subImgCharMatcher.setRoundMethod(roundMethod);
+        Random random = new Random(SEED);
+        brightness = new double[resolution * resolution];
+        for (int i = 0; i < brightness.length; i++) {
+            brightness[i] = random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    public void matchFrame(Blackhole blackhole) {
+        for (double value : brightness) {
+            blackhole.consume(subImgCharMatcher.getCharByImageBrightness(value));
+        }
+    }
+
+    @Benchmark
+    public SubImgCharMatcher createMatcher() {
+        return new SubImgCharMatcher(SyntheticImages.charset(charsetSize));
+    }
+}
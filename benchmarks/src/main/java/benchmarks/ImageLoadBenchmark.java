@@ -0,0 +1,34 @@
+package benchmarks;
+
+import image.Image;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks decoding an image file into an Image.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageLoadBenchmark {
+    @Param({"640x480", "4000x3000", "8192x6144"})
+    public String size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = SyntheticImages.jpegFile(size);
+    }
+
+    @Benchmark
+    public Image load() throws IOException {
+        return new Image(file.getPath());
+    }
+}
@@ -0,0 +1,114 @@
+package benchmarks;
+
+import image.BrightnessMatrix;
+import image.Image;
+import image.ImageProcessor;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks padding, dividing and calculating the brightness of an image.
+ * "Cold" brightness benchmarks run on an image whose summed-area table was not built yet,
+ * "warm" ones reuse the table.
+ * Inputs are built once per trial; only the cold benchmark gets a fresh image before every invocation,
+ * in its own state, so the other benchmarks carry no per-invocation setup.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = {"-Djava.awt.headless=true", "--add-modules=jdk.incubator.vector"})
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class ImageProcessorBenchmark {
+    @Param({"640x480", "4000x3000"})
+    public String size;
+
+    @Param({"16", "128", "512"})
+    public int resolution;
+
+    private final ImageProcessor imageProcessor = new ImageProcessor();
+    private final ImageProcessor fixedPointProcessor = new ImageProcessor(1, ImageProcessor.Kernel.FIXED_POINT);
+    private final ImageProcessor vectorProcessor = new ImageProcessor(1, ImageProcessor.Kernel.VECTOR);
+    private int[] pixels;
+    private int width;
+    private int height;
+    private Image image;
+    private Image extendedImage;
+    private Image[][] subImages;
+
+    @Setup
+    public void setUp() {
+        int[] dims = SyntheticImages.parseSize(size);
+        width = dims[0];
+        height = dims[1];
+        pixels = SyntheticImages.pixels(width, height);
+        image = new Image(pixels, width, height);
+        imageProcessor.createBrightnessMatrix(image, resolution);
+        extendedImage = imageProcessor.extendImage(image);
+        subImages = imageProcessor.divideImage(extendedImage, resolution);
+    }
+
+    /**
+     * An image whose summed-area table was not built yet, replaced before every invocation.
+     */
+    @State(Scope.Thread)
+    public static class FreshImage {
+        private Image image;
+
+        @Setup(Level.Invocation)
+        public void setUp(ImageProcessorBenchmark benchmark) {
+            image = new Image(benchmark.pixels, benchmark.width, benchmark.height);
+        }
+    }
+
+    @Benchmark
+    public Image extendImage() {
+        return imageProcessor.extendImage(image);
+    }
+
+    @Benchmark
+    public Image[][] divideImage() {
+        return imageProcessor.divideImage(extendedImage, resolution);
+    }
+
+    @Benchmark
+    public BrightnessMatrix brightnessFromSubImages() {
+        return new BrightnessMatrix(subImages);
+    }
+
+    @Benchmark
+    public double imageBrightnessDouble() {
+        return sumBrightness(imageProcessor);
+    }
+
+    @Benchmark
+    public double imageBrightnessFixedPoint() {
+        return sumBrightness(fixedPointProcessor);
+    }
+
+    @Benchmark
+    public double imageBrightnessVector() {
+        return sumBrightness(vectorProcessor);
+    }
+
+    @Benchmark
+    public BrightnessMatrix brightnessWarm() {
+        return imageProcessor.createBrightnessMatrix(image, resolution);
+    }
+
+    @Benchmark
+    public BrightnessMatrix brightnessCold(FreshImage freshImage) {
+        return imageProcessor.createBrightnessMatrix(freshImage.image, resolution);
+    }
+
+    private double sumBrightness(ImageProcessor processor) {
+        double sum = 0;
+        for (Image[] row : subImages) {
+            for (Image subImage : row) {
+                sum += processor.imageBrightness(subImage);
+            }
+        }
+        return sum;
+    }
+}
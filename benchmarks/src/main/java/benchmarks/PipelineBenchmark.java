@@ -0,0 +1,56 @@
+package benchmarks;
+
+import ascii_art.AsciiArtAlgorithm;
+import ascii_output.HtmlAsciiOutput;
+import image.BrightnessMatrix;
+import image.Image;
+import image.ImageProcessor;
+import image_char_matching.SubImgCharMatcher;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks the whole conversion, from an image file to an HTML file, as the asciiArt command does it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class PipelineBenchmark {
+    private static final String FONT_NAME = "Courier New";
+
+    @Param({"640x480", "4000x3000"})
+    public String size;
+
+    @Param({"64", "256"})
+    public int resolution;
+
+    @Param({"10", "95"})
+    public int charsetSize;
+
+    private File imageFile;
+    private File htmlFile;
+    private SubImgCharMatcher subImgCharMatcher;
+
+    @Setup
+    public void setUp() throws IOException {
+        imageFile = SyntheticImages.jpegFile(size);
+        htmlFile = File.createTempFile("benchmark", ".html");
+        htmlFile.deleteOnExit();
+        subImgCharMatcher = new SubImgCharMatcher(SyntheticImages.charset(charsetSize));
+    }
+
+    @Benchmark
+    public char[][] endToEnd() throws IOException {
+        Image image = new Image(imageFile.getPath());
+        BrightnessMatrix brightnessMatrix = new ImageProcessor().createBrightnessMatrix(image, resolution);
+        char[][] chars = new AsciiArtAlgorithm(image, resolution, subImgCharMatcher, brightnessMatrix).run();
+        new HtmlAsciiOutput(htmlFile.getPath(), FONT_NAME).out(chars);
+        return chars;
+    }
+}
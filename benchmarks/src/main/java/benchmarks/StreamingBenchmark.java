@@ -0,0 +1,45 @@
+package benchmarks;
+
+import image.BrightnessMatrix;
+import image.Image;
+import image.ImageProcessor;
+import image.StreamingBrightnessReader;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks calculating a brightness matrix straight from an image file, by decoding the whole image
+ * and by streaming it: JPEG files are decoded in a single pass, row by row, so no band budget applies.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+public class StreamingBenchmark {
+    private static final int RESOLUTION = 128;
+
+    @Param({"4000x3000", "8192x6144"})
+    public String size;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws IOException {
+        file = SyntheticImages.jpegFile(size);
+    }
+
+    @Benchmark
+    public BrightnessMatrix decodeWhole() throws IOException {
+        return new ImageProcessor().createBrightnessMatrix(new Image(file.getPath()), RESOLUTION);
+    }
+
+    @Benchmark
+    public BrightnessMatrix stream() throws IOException {
+        return new StreamingBrightnessReader().createBrightnessMatrix(file.getPath(), RESOLUTION);
+    }
+}
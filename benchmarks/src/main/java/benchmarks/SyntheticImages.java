@@ -0,0 +1,102 @@
+package benchmarks;
+
+import image.Image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+/**
+ * Generates deterministic synthetic images for the benchmarks, so no input files are needed.
+ * The pictures are smooth gradients with noise, which compress and decode like photographs
+ * more than flat colors do.
+ */
+final class SyntheticImages {
+    private static final long SEED = 42;
+    private static final int NOISE = 32;
+    private static final int MAX_RGB = 255;
+    private static final String SIZE_SEPARATOR = "x";
+
+    private SyntheticImages() {
+    }
+
+    /**
+     * Parses an image size given as "WIDTHxHEIGHT".
+     *
+     * @param size The size string.
+     * @return The width and the height.
+     */
+    static int[] parseSize(String size) {
+        String[] parts = size.split(SIZE_SEPARATOR);
+        return new int[]{Integer.parseInt(parts[0]), Integer.parseInt(parts[1])};
+    }
+
+    /**
+     * Generates packed opaque pixels, row by row.
+     *
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     * @return The packed pixels.
+     */
+    static int[] pixels(int width, int height) {
+        Random random = new Random(SEED);
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                int red = clamp(j * MAX_RGB / width + random.nextInt(NOISE));
+                int green = clamp(i * MAX_RGB / height + random.nextInt(NOISE));
+                int blue = clamp((i + j) * MAX_RGB / (width + height) + random.nextInt(NOISE));
+                pixels[i * width + j] = 0xFF000000 | red << 16 | green << 8 | blue;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Generates an image of the given size.
+     *
+     * @param size The size of the image, as "WIDTHxHEIGHT".
+     * @return A new Image over freshly generated pixels.
+     */
+    static Image image(String size) {
+        int[] dims = parseSize(size);
+        return new Image(pixels(dims[0], dims[1]), dims[0], dims[1]);
+    }
+
+    /**
+     * Writes a generated image of the given size to a temporary JPEG file.
+     *
+     * @param size The size of the image, as "WIDTHxHEIGHT".
+     * @return The file, which is deleted when the JVM exits.
+     * @throws IOException If the file cannot be written.
+     */
+    static File jpegFile(String size) throws IOException {
+        int[] dims = parseSize(size);
+        BufferedImage image = new BufferedImage(dims[0], dims[1], BufferedImage.TYPE_INT_RGB);
+        image.setRGB(0, 0, dims[0], dims[1], pixels(dims[0], dims[1]), 0, dims[0]);
+        File file = File.createTempFile("benchmark-" + size, ".jpeg");
+        file.deleteOnExit();
+        ImageIO.write(image, "jpeg", file);
+        return file;
+    }
+
+    /**
+     * Returns the first charsetSize printable ASCII characters.
+     *
+     * @param charsetSize The number of characters (at most 95).
+     * @return The characters.
+     */
+    static char[] charset(int charsetSize) {
+        char[] charset = new char[charsetSize];
+        for (int i = 0; i < charsetSize; i++) {
+            charset[i] = (char) (' ' + i);
+        }
+        return charset;
+    }
+
+    private static int clamp(int value) {
+        return Math.min(MAX_RGB, value);
+    }
+}
@@ -9,6 +9,7 @@ import ascii_art.exceptions.ImageProcessorExceptions;
  */
 public class BrightnessMatrix {
     private static final String NULL_EXCEPTION = "subImage is a null pointer";
+    private static final int ARRAY_HEADER_BYTES = 16; // Approximate JVM overhead of every array.
     private final double[][] doubleImage;
 
     /**
@@ -18,6 +19,20 @@ public class BrightnessMatrix {
      * @throws ImageProcessorExceptions If the subImages array is null.
      */
     public BrightnessMatrix(Image[][] subImages) throws ImageProcessorExceptions {
+        this(subImages, 1);
+    }
+
+    /**
+     * Constructs a BrightnessMatrix by calculating brightness values for a given 2D array of sub-images,
+     * rows of sub-images being calculated in parallel on a fork/join pool.
+     * Each value is calculated independently by the same code, so the matrix is bit-identical to the
+     * one calculated sequentially, for any parallelism.
+     *
+     * @param subImages   A 2D array of Image objects representing the divided sub-images of an input image.
+     * @param parallelism The maximal number of threads to use (1 for a sequential calculation).
+     * @throws ImageProcessorExceptions If the subImages array is null.
+     */
+    public BrightnessMatrix(Image[][] subImages, int parallelism) throws ImageProcessorExceptions {
         ImageProcessor imageProcessor = new ImageProcessor();
         if (subImages == null) {
             throw new ImageProcessorExceptions(NULL_EXCEPTION);
@@ -25,14 +40,24 @@ public class BrightnessMatrix {
 
         int numRow = subImages.length;
         int numCols = subImages[0].length;
-        this.doubleImage = new double[numRow][numCols];
+        double[][] values = new double[numRow][numCols];
 
-        for (int i = 0; i < numRow; i++) {
+        ParallelRows.forEach(numRow, parallelism, i -> {
             for (int j = 0; j < numCols; j++) {
                 Image curImage = subImages[i][j];
-                this.doubleImage[i][j] = imageProcessor.imageBrightness(curImage);
+                values[i][j] = imageProcessor.imageBrightness(curImage);
             }
-        }
+        });
+        this.doubleImage = values;
+    }
+
+    /**
+     * Constructs a BrightnessMatrix over brightness values that were already calculated.
+     *
+     * @param doubleImage The brightness values, indexed by row and then by column.
+     */
+    BrightnessMatrix(double[][] doubleImage) {
+        this.doubleImage = doubleImage;
     }
 
     /**
@@ -45,4 +70,32 @@ public class BrightnessMatrix {
     public double getPixel(int row, int col) {
         return this.doubleImage[row][col];
     }
+
+    /**
+     * Returns the number of rows in the matrix.
+     *
+     * @return The number of rows.
+     */
+    public int getNumRows() {
+        return this.doubleImage.length;
+    }
+
+    /**
+     * Returns the number of columns in the matrix.
+     *
+     * @return The number of columns.
+     */
+    public int getNumCols() {
+        return this.doubleImage.length == 0 ? 0 : this.doubleImage[0].length;
+    }
+
+    /**
+     * Estimates the number of heap bytes taken by the brightness values of this matrix.
+     *
+     * @return The approximate memory footprint of the matrix, in bytes.
+     */
+    public long getMemoryFootprint() {
+        return ARRAY_HEADER_BYTES +
+                (long) getNumRows() * (ARRAY_HEADER_BYTES + (long) getNumCols() * Double.BYTES);
+    }
 }
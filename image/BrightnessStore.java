@@ -0,0 +1,236 @@
+package image;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * A directory of brightness matrices kept across runs, keyed by image fingerprint and resolution, so a
+ * matrix calculated once is never calculated again, and an image whose matrix is stored need not be
+ * decoded at all.
+ * Every matrix is one file, named by its key, holding a small header followed by the brightness values
+ * as raw little-endian doubles, row by row; it is read back whole, with a plain read, and copied into the
+ * matrix, so no file is left open or mapped.
+ * Files are written to a temporary name and renamed into place, so concurrent runs sharing a directory
+ * never see a partial matrix. Once the directory exceeds its budget, the least recently used files are
+ * deleted, along with temporary files left behind by runs that died while writing. The store is only an
+ * accelerator: files that cannot be read or written are treated as missing, and invalid files are deleted.
+ */
+public class BrightnessStore {
+    /**
+     * The default disk budget of a store, in bytes.
+     */
+    public static final long DEFAULT_MAX_BYTES = 256L * 1024 * 1024;
+    private static final int MAGIC = 0x41424D31; // "ABM1": the format of the files, and its version.
+    // Magic, resolution, number of rows and of columns, then fingerprint; a multiple of Double.BYTES.
+    private static final int HEADER_BYTES = 4 * Integer.BYTES + Long.BYTES;
+    private static final String FILE_SUFFIX = ".bm";
+    private static final String FILE_NAME_FORMAT = "%016x-%d" + FILE_SUFFIX;
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final String FILE_GLOB = "*{" + FILE_SUFFIX + "," + TEMP_SUFFIX + "}";
+    // A temporary file this old is left behind by a run that died, not being written by a live one:
+    private static final long STALE_TEMP_MILLIS = 60L * 60 * 1000;
+
+    private final Path directory;
+    private final long maxBytes; // The disk budget of the stored files.
+
+    /**
+     * Constructs a store over a directory with the default disk budget.
+     *
+     * @param directory The directory of the store, created on first write if it does not exist.
+     */
+    public BrightnessStore(Path directory) {
+        this(directory, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Constructs a store over a directory.
+     *
+     * @param directory The directory of the store, created on first write if it does not exist.
+     * @param maxBytes  The maximal total size of the stored files, in bytes.
+     */
+    public BrightnessStore(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Tells whether the brightness matrix of an image at a resolution is stored.
+     *
+     * @param fingerprint The fingerprint of the image.
+     * @param resolution  The resolution of the matrix.
+     * @return True if the matrix is stored.
+     */
+    public boolean contains(long fingerprint, int resolution) {
+        return Files.isRegularFile(pathOf(fingerprint, resolution));
+    }
+
+    /**
+     * Reads the brightness matrix of an image at a resolution, marking it as recently used.
+     *
+     * @param fingerprint The fingerprint of the image.
+     * @param resolution  The resolution of the matrix.
+     * @return The stored matrix, or null if it is not stored or its file is not a valid matrix.
+     */
+    public BrightnessMatrix get(long fingerprint, int resolution) {
+        Path path = pathOf(fingerprint, resolution);
+        double[][] doubleImage;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            doubleImage = read(channel, fingerprint, resolution);
+        } catch (IOException e) {
+            return null; // Including a file that does not exist.
+        }
+        try {
+            if (doubleImage == null) {
+                // Damaged or truncated; deleted so that it is stored again.
+                Files.deleteIfExists(path);
+                return null;
+            }
+            Files.setLastModifiedTime(path, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // Only the recency of the file is lost.
+        }
+        return doubleImage == null ? null : new BrightnessMatrix(doubleImage);
+    }
+
+    /**
+     * Reads a stored file whole and copies its brightness values out of it.
+     *
+     * @return The brightness values, or null if the file is not a valid matrix of the given key.
+     */
+    private static double[][] read(FileChannel channel, long fingerprint, int resolution) throws IOException {
+        long size = channel.size();
+        if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+            return null;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) size).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                return null; // Truncated while being read.
+            }
+        }
+        buffer.flip();
+        if (buffer.getInt() != MAGIC || buffer.getInt() != resolution) {
+            return null;
+        }
+        int numRows = buffer.getInt();
+        int numCols = buffer.getInt();
+        if (buffer.getLong() != fingerprint || numRows < 0 || numCols < 0 ||
+                size != HEADER_BYTES + (long) numRows * numCols * Double.BYTES) {
+            return null;
+        }
+        DoubleBuffer values = buffer.asDoubleBuffer();
+        double[][] doubleImage = new double[numRows][numCols];
+        for (double[] row : doubleImage) {
+            values.get(row);
+        }
+        return doubleImage;
+    }
+
+    /**
+     * Stores the brightness matrix of an image at a resolution, unless it is already stored or is larger
+     * than the whole budget, then deletes the least recently used files while the store is over its budget.
+     *
+     * @param fingerprint The fingerprint of the image.
+     * @param resolution  The resolution of the matrix.
+     * @param matrix      The matrix to store.
+     */
+    public void put(long fingerprint, int resolution, BrightnessMatrix matrix) {
+        Path path = pathOf(fingerprint, resolution);
+        int numRows = matrix.getNumRows();
+        int numCols = matrix.getNumCols();
+        long fileBytes = HEADER_BYTES + (long) numRows * numCols * Double.BYTES;
+        if (fileBytes > Math.min(maxBytes, Integer.MAX_VALUE) || Files.isRegularFile(path)) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate((int) fileBytes)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC).putInt(resolution).putInt(numRows).putInt(numCols).putLong(fingerprint);
+        for (int row = 0; row < numRows; row++) {
+            for (int col = 0; col < numCols; col++) {
+                buffer.putDouble(matrix.getPixel(row, col));
+            }
+        }
+        buffer.flip();
+
+        Path temp = null;
+        try {
+            Files.createDirectories(directory);
+            temp = Files.createTempFile(directory, path.getFileName().toString(), TEMP_SUFFIX);
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            temp = null;
+            evict();
+        } catch (IOException e) {
+            // Not stored; the matrix is calculated again next time.
+        } finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                } catch (IOException e) {
+                    // Left behind, but never read as a matrix.
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes stale temporary files, then the least recently used files of the store while the total size
+     * of its files (including temporary files being written) exceeds the budget.
+     */
+    private void evict() throws IOException {
+        List<Path> files = new ArrayList<>();
+        long usedBytes = 0;
+        long staleBefore = System.currentTimeMillis() - STALE_TEMP_MILLIS;
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory, FILE_GLOB)) {
+            for (Path entry : entries) {
+                boolean temp = entry.getFileName().toString().endsWith(TEMP_SUFFIX);
+                if (temp && lastModified(entry) < staleBefore) {
+                    Files.deleteIfExists(entry);
+                    continue;
+                }
+                if (!temp) {
+                    files.add(entry);
+                }
+                usedBytes += Files.size(entry);
+            }
+        }
+        if (usedBytes <= maxBytes) {
+            return;
+        }
+        files.sort(Comparator.comparingLong(BrightnessStore::lastModified));
+        for (int i = 0; i < files.size() && usedBytes > maxBytes; i++) {
+            long size = Files.size(files.get(i));
+            if (Files.deleteIfExists(files.get(i))) {
+                usedBytes -= size;
+            }
+        }
+    }
+
+    private static long lastModified(Path path) {
+        try {
+            return Files.getLastModifiedTime(path).toMillis();
+        } catch (IOException e) {
+            return Long.MIN_VALUE; // Gone already; evicted first.
+        }
+    }
+
+    private Path pathOf(long fingerprint, int resolution) {
+        return directory.resolve(String.format(FILE_NAME_FORMAT, fingerprint, resolution));
+    }
+}
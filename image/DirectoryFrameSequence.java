@@ -0,0 +1,101 @@
+package image;
+
+import javax.imageio.ImageIO;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.NoSuchElementException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * The image files of a directory as frames, ordered by the last number in their names
+ * (so "frame2.png" comes before "frame10.png"), then by name.
+ * All the frames must have the size of the first one. Like the canvas of FileFrameSequence, frames of
+ * odd dimensions are padded with white to even ones.
+ */
+class DirectoryFrameSequence implements FrameSequence {
+    private static final Pattern LAST_NUMBER = Pattern.compile("(\\d+)\\D*$");
+    private static final String NO_FRAMES_MESSAGE = "No images found in ";
+    private static final String SIZE_MISMATCH_MESSAGE = "%s is %dx%d, but the first frame is %dx%d";
+
+    private final List<Path> frames;
+    private int nextIndex;
+    // The size of the first frame, before padding; known once it is decoded.
+    private int width;
+    private int height;
+
+    /**
+     * Lists the image files of a directory.
+     *
+     * @param directory The directory.
+     * @throws IOException If the directory cannot be read or has no image files.
+     */
+    DirectoryFrameSequence(Path directory) throws IOException {
+        List<String> suffixes = Arrays.asList(ImageIO.getReaderFileSuffixes());
+        frames = new ArrayList<>();
+        try (DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+            for (Path entry : entries) {
+                String name = entry.getFileName().toString();
+                int dot = name.lastIndexOf('.');
+                if (Files.isRegularFile(entry) && dot >= 0 &&
+                        suffixes.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT))) {
+                    frames.add(entry);
+                }
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException(NO_FRAMES_MESSAGE + directory);
+        }
+        frames.sort(Comparator.comparingLong(DirectoryFrameSequence::frameNumber)
+                .thenComparing(path -> path.getFileName().toString()));
+    }
+
+    @Override
+    public int getNumFrames() {
+        return frames.size();
+    }
+
+    @Override
+    public Image nextFrame() throws IOException {
+        if (nextIndex >= frames.size()) {
+            throw new NoSuchElementException();
+        }
+        Path path = frames.get(nextIndex);
+        Image image = new Image(path.toString());
+        if (nextIndex == 0) {
+            width = image.getWidth();
+            height = image.getHeight();
+        } else if (image.getWidth() != width || image.getHeight() != height) {
+            throw new IOException(String.format(SIZE_MISMATCH_MESSAGE, path.getFileName(),
+                    image.getWidth(), image.getHeight(), width, height));
+        }
+        nextIndex++;
+        return image.padToEven();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    /**
+     * Returns the last number in the name of a file, or -1 if it has none (or it is too long).
+     */
+    private static long frameNumber(Path path) {
+        Matcher matcher = LAST_NUMBER.matcher(path.getFileName().toString());
+        if (!matcher.find()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(matcher.group(1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package image;
+
+import javax.imageio.ImageReader;
+import javax.imageio.metadata.IIOMetadata;
+import javax.imageio.metadata.IIOMetadataNode;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.File;
+import java.io.IOException;
+import java.util.NoSuchElementException;
+
+/**
+ * The frames of a multi-image file, such as an animated GIF.
+ * GIF frames may cover only part of the picture and say how they are disposed of before the next
+ * frame is drawn, so frames are composited onto a canvas, which starts white (like the padding of
+ * ImageProcessor) and is rounded up to even dimensions for the same reason.
+ */
+class FileFrameSequence implements FrameSequence {
+    private static final String GIF_STREAM_FORMAT = "javax_imageio_gif_stream_1.0";
+    private static final String GIF_IMAGE_FORMAT = "javax_imageio_gif_image_1.0";
+    private static final String SCREEN_DESCRIPTOR = "LogicalScreenDescriptor";
+    private static final String SCREEN_WIDTH = "logicalScreenWidth";
+    private static final String SCREEN_HEIGHT = "logicalScreenHeight";
+    private static final String IMAGE_DESCRIPTOR = "ImageDescriptor";
+    private static final String IMAGE_LEFT = "imageLeftPosition";
+    private static final String IMAGE_TOP = "imageTopPosition";
+    private static final String GRAPHIC_CONTROL = "GraphicControlExtension";
+    private static final String DISPOSAL_METHOD = "disposalMethod";
+    private static final String RESTORE_TO_BACKGROUND = "restoreToBackgroundColor";
+    private static final String RESTORE_TO_PREVIOUS = "restoreToPrevious";
+
+    private final ImageInputStream input;
+    private final ImageReader reader;
+    private final int numFrames;
+    private final int width;
+    private final int height;
+    private final BufferedImage canvas; // The picture as composited so far.
+    private final int[] canvasPixels; // The data of the canvas.
+    private int nextIndex;
+
+    /**
+     * Opens a multi-image file.
+     *
+     * @param file The file.
+     * @throws IOException If the file cannot be read or its format is not supported.
+     */
+    FileFrameSequence(File file) throws IOException {
+        input = ImageReaders.openStream(file.getPath());
+        try {
+            reader = ImageReaders.openReader(input, file.getPath(), false);
+        } catch (IOException e) {
+            input.close();
+            throw e;
+        }
+        numFrames = reader.getNumImages(true);
+
+        int screenWidth = reader.getWidth(0);
+        int screenHeight = reader.getHeight(0);
+        IIOMetadataNode screen = findNode(reader.getStreamMetadata(), GIF_STREAM_FORMAT, SCREEN_DESCRIPTOR);
+        if (screen != null) {
+            screenWidth = Math.max(screenWidth, Integer.parseInt(screen.getAttribute(SCREEN_WIDTH)));
+            screenHeight = Math.max(screenHeight, Integer.parseInt(screen.getAttribute(SCREEN_HEIGHT)));
+        }
+        width = Image.roundUpToEven(screenWidth);
+        height = Image.roundUpToEven(screenHeight);
+        canvas = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+        canvasPixels = ((DataBufferInt) canvas.getRaster().getDataBuffer()).getData();
+        fill(0, 0, width, height);
+    }
+
+    @Override
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    @Override
+    public Image nextFrame() throws IOException {
+        if (nextIndex >= numFrames) {
+            throw new NoSuchElementException();
+        }
+        BufferedImage frame = reader.read(nextIndex);
+        IIOMetadata metadata = reader.getImageMetadata(nextIndex);
+        nextIndex++;
+
+        int left = 0;
+        int top = 0;
+        IIOMetadataNode descriptor = findNode(metadata, GIF_IMAGE_FORMAT, IMAGE_DESCRIPTOR);
+        if (descriptor != null) {
+            left = Integer.parseInt(descriptor.getAttribute(IMAGE_LEFT));
+            top = Integer.parseInt(descriptor.getAttribute(IMAGE_TOP));
+        }
+        IIOMetadataNode control = findNode(metadata, GIF_IMAGE_FORMAT, GRAPHIC_CONTROL);
+        String disposal = control == null ? "" : control.getAttribute(DISPOSAL_METHOD);
+
+        int[] previous = disposal.equals(RESTORE_TO_PREVIOUS) ? canvasPixels.clone() : null;
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.drawImage(frame, left, top, null);
+        graphics.dispose();
+        Image image = new Image(Image.decodePixels(canvas), width, height);
+
+        if (disposal.equals(RESTORE_TO_BACKGROUND)) {
+            fill(left, top, frame.getWidth(), frame.getHeight());
+        } else if (previous != null) {
+            System.arraycopy(previous, 0, canvasPixels, 0, canvasPixels.length);
+        }
+        return image;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.dispose();
+        input.close();
+    }
+
+    private void fill(int left, int top, int fillWidth, int fillHeight) {
+        Graphics2D graphics = canvas.createGraphics();
+        graphics.setColor(Color.WHITE);
+        graphics.fillRect(left, top, fillWidth, fillHeight);
+        graphics.dispose();
+    }
+
+    /**
+     * Finds a node of the given name in the tree of the given native metadata format.
+     *
+     * @return The node, or null if the metadata is not in that format or has no such node.
+     */
+    private static IIOMetadataNode findNode(IIOMetadata metadata, String format, String name) {
+        if (metadata == null || !format.equals(metadata.getNativeMetadataFormatName())) {
+            return null;
+        }
+        IIOMetadataNode root = (IIOMetadataNode) metadata.getAsTree(format);
+        return root.getElementsByTagName(name).getLength() == 0 ? null :
+                (IIOMetadataNode) root.getElementsByTagName(name).item(0);
+    }
+}
@@ -0,0 +1,129 @@
+package image;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+/**
+ * A fast 64-bit hash of the content of an image, used to recognise the same image whatever object,
+ * path or run it comes from. Images decoded from a file are fingerprinted by the bytes of the file;
+ * any other image by its size and pixels (see Image.getFingerprint). The two kinds are seeded apart,
+ * so they never match by construction, only by a (negligible, 2^-64) collision.
+ * The hash is not cryptographic: it must not be trusted for inputs crafted to collide.
+ */
+public final class Fingerprint {
+    static final long FILE_SEED = 0x27D4EB2F165667C5L;
+    static final long PIXEL_SEED = 0x165667B19E3779F9L;
+    private static final long PRIME_1 = 0x9E3779B185EBCA87L;
+    private static final long PRIME_2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long PRIME_3 = 0x165667B19E3779F9L;
+    private static final long PRIME_4 = 0x85EBCA77C2B2AE63L;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    private static final VarHandle LONGS =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private Fingerprint() {
+    }
+
+    /**
+     * Fingerprints the bytes of a file, reading it once, in fixed-size chunks.
+     *
+     * @param filename The file.
+     * @return The fingerprint of the file's content.
+     * @throws IOException If the file cannot be read.
+     */
+    public static long ofFile(String filename) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        Hasher hasher = new Hasher();
+        try (InputStream input = Files.newInputStream(Paths.get(filename))) {
+            int read;
+            while ((read = input.read(buffer)) >= 0) {
+                hasher.update(buffer, 0, read);
+            }
+        }
+        return hasher.finish();
+    }
+
+    /**
+     * Fingerprints bytes as they arrive, in pieces of any size, the same way ofFile fingerprints a file of
+     * the same bytes.
+     */
+    static final class Hasher {
+        private long hash = FILE_SEED;
+        private long length;
+        private long pending; // The bytes of an incomplete word, little-endian.
+        private int numPending;
+
+        /**
+         * Adds bytes to the hash, eight at a time once a word is complete.
+         *
+         * @param bytes  The array holding the bytes.
+         * @param offset The index of the first byte.
+         * @param count  The number of bytes.
+         */
+        void update(byte[] bytes, int offset, int count) {
+            int i = offset;
+            int end = offset + count;
+            for (; numPending > 0 && i < end; i++) {
+                addPending(bytes[i]);
+            }
+            for (; i + Long.BYTES <= end; i += Long.BYTES) {
+                hash = mix(hash, (long) LONGS.get(bytes, i));
+            }
+            for (; i < end; i++) {
+                addPending(bytes[i]);
+            }
+            length += count;
+        }
+
+        /**
+         * Returns the fingerprint of all the bytes added so far.
+         *
+         * @return The fingerprint.
+         */
+        long finish() {
+            return Fingerprint.finish(numPending > 0 ? mix(hash, pending) : hash, length);
+        }
+
+        private void addPending(byte b) {
+            pending |= (b & 0xFFL) << (numPending * Byte.SIZE);
+            if (++numPending == Long.BYTES) {
+                hash = mix(hash, pending);
+                pending = 0;
+                numPending = 0;
+            }
+        }
+    }
+
+    /**
+     * Adds a 64-bit word to a hash.
+     *
+     * @param hash The hash so far.
+     * @param word The word to add.
+     * @return The new hash.
+     */
+    static long mix(long hash, long word) {
+        hash ^= Long.rotateLeft(word * PRIME_2, 31) * PRIME_1;
+        return Long.rotateLeft(hash, 27) * PRIME_1 + PRIME_4;
+    }
+
+    /**
+     * Mixes the length of the hashed data into a hash and spreads its bits.
+     *
+     * @param hash   The hash of all the data.
+     * @param length The length of the data.
+     * @return The fingerprint.
+     */
+    static long finish(long hash, long length) {
+        hash ^= length;
+        hash ^= hash >>> 33;
+        hash *= PRIME_2;
+        hash ^= hash >>> 29;
+        hash *= PRIME_3;
+        return hash ^ hash >>> 32;
+    }
+}
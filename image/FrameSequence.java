@@ -0,0 +1,43 @@
+package image;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A sequence of frames decoded one at a time, in order: the frames of an animated image file,
+ * or the numbered image files of a directory.
+ */
+public interface FrameSequence extends Closeable {
+    /**
+     * Returns the number of frames in the sequence.
+     *
+     * @return The number of frames.
+     */
+    int getNumFrames();
+
+    /**
+     * Decodes the next frame of the sequence.
+     *
+     * @return The next frame.
+     * @throws IOException If the frame cannot be decoded.
+     * @throws java.util.NoSuchElementException If all the frames were already decoded.
+     */
+    Image nextFrame() throws IOException;
+
+    /**
+     * Opens the frames of an animated image file (such as a GIF), or of the image files of a directory
+     * ordered by the number in their names.
+     *
+     * @param source An image file, or a directory of frames.
+     * @return The frame sequence.
+     * @throws IOException If the source cannot be read.
+     */
+    static FrameSequence open(String source) throws IOException {
+        File file = new File(source);
+        if (file.isDirectory()) {
+            return new DirectoryFrameSequence(file.toPath());
+        }
+        return new FileFrameSequence(file);
+    }
+}
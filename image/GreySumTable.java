@@ -0,0 +1,132 @@
+package image;
+
+/**
+ * A summed-area table (integral image) of the grey values of an array of packed pixels.
+ * Once built, the sum of the grey values of any rectangle of the pixels is available in O(1),
+ * so the brightness of every sub-image at every resolution can be computed without rescanning pixels.
+ *
+ * Grey values are kept as exact integers: the luminance coefficients 0.2126, 0.7152 and 0.0722
+ * have four decimal digits, so scaling them by WEIGHT_SCALE makes every grey value (and every sum
+ * of them) an exact long, independent of summation order. The scaled contribution of every channel
+ * value is looked up in a 256-entry table per channel.
+ *
+ * The table holds (width + 1) * (height + 1) longs, twice the memory of the packed pixels it sums,
+ * so Image only builds it once it pays off, and lets it go when memory runs low.
+ */
+class GreySumTable {
+    /**
+     * The factor by which all grey values and sums of this table are scaled.
+     */
+    static final int WEIGHT_SCALE = 10000;
+    static final int RED_WEIGHT = 2126;
+    static final int GREEN_WEIGHT = 7152;
+    static final int BLUE_WEIGHT = 722;
+    private static final int MAX_RGB = 255;
+    private static final int COLUMN_BLOCK = 1024; // Columns accumulated together in a parallel build.
+    private static final int CHANNEL_VALUES = MAX_RGB + 1;
+    // The scaled grey contribution of every value of every channel:
+    private static final int[] RED_GREY = channelGrey(RED_WEIGHT);
+    private static final int[] GREEN_GREY = channelGrey(GREEN_WEIGHT);
+    private static final int[] BLUE_GREY = channelGrey(BLUE_WEIGHT);
+
+    /**
+     * The scaled grey value of a white pixel.
+     */
+    static final long WHITE_GREY = (long) MAX_RGB * WEIGHT_SCALE;
+
+    private final long[] sums; // sums[r * (width + 1) + c] is the sum of all pixels above r and left of c.
+    private final int tableWidth;
+
+    /**
+     * Builds the table over a rectangle of packed pixels.
+     * With a parallelism of 1 the table is built in a single pass. Otherwise rows are summed in
+     * parallel and then columns are accumulated in parallel blocks; since all sums are exact
+     * integers, the table is identical either way.
+     *
+     * @param pixels      Packed 0xAARRGGBB values, row by row.
+     * @param stride      Distance between two rows in the pixels array.
+     * @param width       The number of columns to include.
+     * @param height      The number of rows to include.
+     * @param parallelism The maximal number of threads to use.
+     */
+    GreySumTable(int[] pixels, int stride, int width, int height, int parallelism) {
+        this.tableWidth = width + 1;
+        this.sums = new long[(height + 1) * tableWidth];
+
+        if (parallelism > 1) {
+            ParallelRows.forEach(height, parallelism, i -> sumRow(pixels, i * stride, width, i + 1));
+            int numBlocks = (width + COLUMN_BLOCK - 1) / COLUMN_BLOCK;
+            ParallelRows.forEach(numBlocks, parallelism, block -> accumulateColumns(
+                    block * COLUMN_BLOCK + 1, Math.min(width, (block + 1) * COLUMN_BLOCK) + 1, height));
+            return;
+        }
+
+        for (int i = 0; i < height; i++) {
+            long rowSum = 0;
+            int src = i * stride;
+            int above = i * tableWidth + 1;
+            int dst = above + tableWidth;
+            for (int j = 0; j < width; j++) {
+                rowSum += grey(pixels[src + j]);
+                sums[dst + j] = sums[above + j] + rowSum;
+            }
+        }
+    }
+
+    /**
+     * Writes the running grey sum of a single row of pixels into a row of the table.
+     */
+    private void sumRow(int[] pixels, int src, int width, int tableRow) {
+        long rowSum = 0;
+        int dst = tableRow * tableWidth + 1;
+        for (int j = 0; j < width; j++) {
+            rowSum += grey(pixels[src + j]);
+            sums[dst + j] = rowSum;
+        }
+    }
+
+    /**
+     * Adds to every row of the table, in the given columns, the sums of the row above it.
+     */
+    private void accumulateColumns(int fromCol, int toCol, int height) {
+        for (int tableRow = 2; tableRow <= height; tableRow++) {
+            int above = (tableRow - 1) * tableWidth;
+            int dst = tableRow * tableWidth;
+            for (int j = fromCol; j < toCol; j++) {
+                sums[dst + j] += sums[above + j];
+            }
+        }
+    }
+
+    /**
+     * Calculates the scaled grey value of a single packed pixel.
+     *
+     * @param rgb The packed pixel.
+     * @return The grey value of the pixel, scaled by WEIGHT_SCALE.
+     */
+    static int grey(int rgb) {
+        return RED_GREY[(rgb >> 16) & 0xFF] + GREEN_GREY[(rgb >> 8) & 0xFF] + BLUE_GREY[rgb & 0xFF];
+    }
+
+    private static int[] channelGrey(int weight) {
+        int[] greys = new int[CHANNEL_VALUES];
+        for (int value = 0; value < CHANNEL_VALUES; value++) {
+            greys[value] = value * weight;
+        }
+        return greys;
+    }
+
+    /**
+     * Returns the scaled sum of the grey values of a rectangle of the pixels.
+     *
+     * @param top    The first row of the rectangle.
+     * @param left   The first column of the rectangle.
+     * @param bottom The row after the last row of the rectangle.
+     * @param right  The column after the last column of the rectangle.
+     * @return The sum of the grey values in the rectangle, scaled by WEIGHT_SCALE.
+     */
+    long sum(int top, int left, int bottom, int right) {
+        return sums[bottom * tableWidth + right] - sums[top * tableWidth + right] -
+                sums[bottom * tableWidth + left] + sums[top * tableWidth + left];
+    }
+}
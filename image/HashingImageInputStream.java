@@ -0,0 +1,137 @@
+package image;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+
+/**
+ * An ImageInputStream over a file that fingerprints the file's bytes (like Fingerprint.ofFile) as a reader
+ * decodes them, so the fingerprint describes exactly the bytes decoded, and the file is read only once.
+ * Small reads are served from a buffer, as readers read headers and chunks a few bytes at a time.
+ * Bytes the reader skips are hashed when it reads past them, and bytes it never reaches by fingerprint.
+ */
+final class HashingImageInputStream extends ImageInputStreamImpl {
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final Fingerprint.Hasher hasher = new Fingerprint.Hasher();
+    private final byte[] singleByte = new byte[1];
+    private final byte[] buffer = new byte[BUFFER_SIZE]; // Bytes of the file, from bufferStart.
+    private long bufferStart;
+    private int bufferLength;
+    private byte[] skipBuffer; // Allocated when the reader first skips bytes.
+    private long hashedLength; // The bytes before this position were hashed, in order.
+
+    /**
+     * Opens a file for reading.
+     *
+     * @param filename The file.
+     * @throws IOException If the file cannot be opened.
+     */
+    HashingImageInputStream(String filename) throws IOException {
+        this.channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ);
+    }
+
+    @Override
+    public int read() throws IOException {
+        return read(singleByte, 0, 1) < 0 ? -1 : singleByte[0] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        checkClosed();
+        Objects.checkFromIndexSize(off, len, b.length);
+        bitOffset = 0;
+        if (len == 0) {
+            return 0;
+        }
+        if (streamPos < bufferStart || streamPos >= bufferStart + bufferLength) {
+            if (len >= buffer.length) {
+                // Large reads go straight to the caller's array.
+                int read = readAt(b, off, len, streamPos);
+                if (read > 0) {
+                    streamPos += read;
+                }
+                return read;
+            }
+            bufferStart = streamPos;
+            bufferLength = Math.max(0, readAt(buffer, 0, buffer.length, streamPos));
+            if (bufferLength == 0) {
+                return -1;
+            }
+        }
+        int count = Math.min(len, (int) (bufferStart + bufferLength - streamPos));
+        System.arraycopy(buffer, (int) (streamPos - bufferStart), b, off, count);
+        streamPos += count;
+        return count;
+    }
+
+    @Override
+    public long length() {
+        try {
+            return channel.size();
+        } catch (IOException e) {
+            return -1L; // Unknown, as the interface allows.
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        super.close();
+        channel.close();
+    }
+
+    /**
+     * Hashes the bytes the reader did not reach, and returns the fingerprint of the whole file.
+     *
+     * @return The fingerprint of the bytes read through this stream, the same as Fingerprint.ofFile.
+     * @throws IOException If the file cannot be read.
+     */
+    long fingerprint() throws IOException {
+        checkClosed();
+        hashUpTo(Long.MAX_VALUE);
+        return hasher.finish();
+    }
+
+    /**
+     * Reads bytes of the file at a position, hashing those that were not hashed yet.
+     *
+     * @return The number of bytes read, or -1 at the end of the file.
+     */
+    private int readAt(byte[] b, int off, int len, long position) throws IOException {
+        hashUpTo(position);
+        int read = channel.read(ByteBuffer.wrap(b, off, len), position);
+        if (read < 0) {
+            return -1;
+        }
+        long end = position + read;
+        if (end > hashedLength) {
+            int hashed = (int) (hashedLength - position);
+            hasher.update(b, off + hashed, read - hashed);
+            hashedLength = end;
+        }
+        return read;
+    }
+
+    /**
+     * Hashes the bytes from hashedLength up to a position, or up to the end of the file if it is earlier.
+     */
+    private void hashUpTo(long position) throws IOException {
+        while (hashedLength < position) {
+            if (skipBuffer == null) {
+                skipBuffer = new byte[BUFFER_SIZE];
+            }
+            int length = (int) Math.min(skipBuffer.length, position - hashedLength);
+            int read = channel.read(ByteBuffer.wrap(skipBuffer, 0, length), hashedLength);
+            if (read < 0) {
+                return;
+            }
+            hasher.update(skipBuffer, 0, read);
+            hashedLength += read;
+        }
+    }
+}
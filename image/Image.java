@@ -1,40 +1,250 @@
 package image;
 
 import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
 import java.awt.*;
 import java.awt.image.BufferedImage;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferInt;
+import java.awt.image.Raster;
+import java.awt.image.SinglePixelPackedSampleModel;
 import java.io.File;
 import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
 
 /**
  * A package-private class of the package image.
+ * Pixels are kept in a single packed ARGB int array (row-major), instead of one
+ * Color object per pixel, so large images stay cheap in memory and in GC time.
+ * An Image may also be a view of a rectangle of another image's pixels (see window).
+ * Every image has a content fingerprint (see getFingerprint), to key caches by content rather than by object.
  * @author Dan Nirel
  */
 public class Image {
+    private static final int OPAQUE_ALPHA = 0xFF000000;
+    private static final int WHITE_RGB = Color.WHITE.getRGB();
 
-
-    private final Color[][] pixelArray;
+    private final int[] pixels; // Packed 0xAARRGGBB values, row by row.
+    private final int stride; // Distance between two rows in the pixels array.
     private final int width;
     private final int height;
 
+    // Position of this image's (0, 0) in the pixels array, and the part of the pixels array this
+    // image may read from. Coordinates outside that part read as white.
+    private final int originRow;
+    private final int originCol;
+    private final int clipTop;
+    private final int clipLeft;
+    private final int clipBottom;
+    private final int clipRight;
+
+    private final Image root; // The image that owns the pixels array (this, unless this is a view).
+    // Only on the root image: its summed-area table, dropped under memory pressure (see prepareGreySums),
+    // and whether a brightness matrix was calculated without it.
+    private volatile SoftReference<GreySumTable> greySumTable;
+    private boolean scannedOnce; // Guarded by this.
+    private volatile long fingerprint; // Only valid once fingerprinted is set.
+    private volatile boolean fingerprinted;
+
+    /**
+     * Decodes an image file, streaming it from disk. The file is fingerprinted by its bytes as they are
+     * decoded, so the fingerprint always describes the pixels, even if the file is replaced meanwhile.
+     *
+     * @param filename The image file.
+     * @throws IOException If the file cannot be read or its format is not supported.
+     */
     public Image(String filename) throws IOException {
-        BufferedImage im = ImageIO.read(new File(filename));
-        width = im.getWidth();
-        height = im.getHeight();
+        BufferedImage im;
+        try (HashingImageInputStream input = new HashingImageInputStream(filename)) {
+            ImageReader reader = ImageReaders.openReader(input, filename, true);
+            try {
+                im = reader.read(0);
+            } finally {
+                reader.dispose();
+            }
+            this.fingerprint = input.fingerprint();
+            this.fingerprinted = true;
+        }
+        this.width = im.getWidth();
+        this.height = im.getHeight();
+        this.pixels = decodePixels(im);
+        this.stride = width;
+        this.originRow = 0;
+        this.originCol = 0;
+        this.clipTop = 0;
+        this.clipLeft = 0;
+        this.clipBottom = height;
+        this.clipRight = width;
+        this.root = this;
+    }
 
-        pixelArray = new Color[height][width];
+    public Image(Color[][] pixelArray, int width, int height) {
+        this(new int[height * width], width, height);
         for (int i = 0; i < height; i++) {
             for (int j = 0; j < width; j++) {
-                pixelArray[i][j]=new Color(im.getRGB(j, i));
+                pixels[i * width + j] = pixelArray[i][j].getRGB();
             }
         }
     }
 
-    public Image(Color[][] pixelArray, int width, int height) {
-        this.pixelArray = pixelArray;
+    /**
+     * Constructs an image directly over a packed pixel array, without copying it.
+     *
+     * @param pixels Packed 0xAARRGGBB values, row by row (length must be width * height).
+     * @param width  The width of the image.
+     * @param height The height of the image.
+     */
+    public Image(int[] pixels, int width, int height) {
+        this.pixels = pixels;
+        this.stride = width;
         this.width = width;
         this.height = height;
+        this.originRow = 0;
+        this.originCol = 0;
+        this.clipTop = 0;
+        this.clipLeft = 0;
+        this.clipBottom = height;
+        this.clipRight = width;
+        this.root = this;
+    }
 
+    /**
+     * Constructs a view of another image, sharing its pixels.
+     */
+    private Image(Image parent, int rowOffset, int colOffset, int width, int height) {
+        this.pixels = parent.pixels;
+        this.stride = parent.stride;
+        this.width = width;
+        this.height = height;
+        this.originRow = parent.originRow + rowOffset;
+        this.originCol = parent.originCol + colOffset;
+        this.clipTop = Math.max(parent.clipTop, originRow);
+        this.clipLeft = Math.max(parent.clipLeft, originCol);
+        this.clipBottom = Math.min(parent.clipBottom, originRow + height);
+        this.clipRight = Math.min(parent.clipRight, originCol + width);
+        this.root = parent.root;
+    }
+
+    /**
+     * Creates a view of a rectangle of this image without copying any pixel.
+     * The rectangle may extend beyond this image; pixels outside of it read as white.
+     *
+     * @param rowOffset The row in this image where the view starts (may be negative).
+     * @param colOffset The column in this image where the view starts (may be negative).
+     * @param width     The width of the view.
+     * @param height    The height of the view.
+     * @return An Image backed by the same pixels as this one.
+     */
+    Image window(int rowOffset, int colOffset, int width, int height) {
+        return new Image(this, rowOffset, colOffset, width, height);
+    }
+
+    /**
+     * Returns this image padded with white on the right and at the bottom to even dimensions, which
+     * ImageProcessor requires, or this image if both are already even. No pixel is copied.
+     *
+     * @return This image, or a view of it with even dimensions.
+     */
+    Image padToEven() {
+        if (width % 2 == 0 && height % 2 == 0) {
+            return this;
+        }
+        return window(0, 0, roundUpToEven(width), roundUpToEven(height));
+    }
+
+    /**
+     * Rounds a dimension up to the nearest even number.
+     */
+    static int roundUpToEven(int dim) {
+        return dim + (dim & 1);
+    }
+
+    /**
+     * Converts a decoded image into opaque packed pixels in one pass.
+     * The common raster layouts produced by ImageIO (packed ints and interleaved BGR/ABGR bytes)
+     * are read straight from their data buffers; any other layout goes through the bulk form of
+     * {@link BufferedImage#getRGB(int, int, int, int, int[], int, int)}.
+     *
+     * @param im The decoded image.
+     * @return The packed pixels, row by row, with the alpha channel forced to opaque.
+     */
+    static int[] decodePixels(BufferedImage im) {
+        int width = im.getWidth();
+        int height = im.getHeight();
+        int[] pixels = new int[height * width];
+        Raster raster = im.getRaster();
+        boolean untranslated = raster.getSampleModelTranslateX() == 0 &&
+                raster.getSampleModelTranslateY() == 0;
+
+        switch (im.getType()) {
+            case BufferedImage.TYPE_INT_RGB:
+            case BufferedImage.TYPE_INT_ARGB:
+                if (untranslated && raster.getSampleModel() instanceof SinglePixelPackedSampleModel) {
+                    DataBufferInt dataBuffer = (DataBufferInt) raster.getDataBuffer();
+                    int stride = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+                    decodePackedInts(dataBuffer.getData(), dataBuffer.getOffset(), stride,
+                            width, height, pixels);
+                    return pixels;
+                }
+                break;
+            case BufferedImage.TYPE_3BYTE_BGR:
+            case BufferedImage.TYPE_4BYTE_ABGR:
+                if (untranslated && raster.getSampleModel() instanceof ComponentSampleModel) {
+                    DataBufferByte dataBuffer = (DataBufferByte) raster.getDataBuffer();
+                    decodeInterleavedBytes(dataBuffer.getData(), dataBuffer.getOffset(),
+                            (ComponentSampleModel) raster.getSampleModel(), width, height, pixels);
+                    return pixels;
+                }
+                break;
+            default:
+                break;
+        }
+
+        im.getRGB(0, 0, width, height, pixels, 0, width);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] |= OPAQUE_ALPHA;
+        }
+        return pixels;
+    }
+
+    /**
+     * Copies pixels from a packed int raster, forcing them to be opaque.
+     */
+    private static void decodePackedInts(int[] data, int offset, int stride, int width, int height,
+                                         int[] pixels) {
+        for (int i = 0; i < height; i++) {
+            int src = offset + i * stride;
+            int dst = i * width;
+            for (int j = 0; j < width; j++) {
+                pixels[dst + j] = OPAQUE_ALPHA | data[src + j];
+            }
+        }
+    }
+
+    /**
+     * Packs pixels from an interleaved byte raster whose first three bands are red, green and blue.
+     */
+    private static void decodeInterleavedBytes(byte[] data, int offset, ComponentSampleModel sampleModel,
+                                               int width, int height, int[] pixels) {
+        int stride = sampleModel.getScanlineStride();
+        int pixelStride = sampleModel.getPixelStride();
+        int[] bandOffsets = sampleModel.getBandOffsets();
+        int redOffset = offset + bandOffsets[0];
+        int greenOffset = offset + bandOffsets[1];
+        int blueOffset = offset + bandOffsets[2];
+
+        for (int i = 0; i < height; i++) {
+            int src = i * stride;
+            int dst = i * width;
+            for (int j = 0; j < width; j++, src += pixelStride) {
+                pixels[dst + j] = OPAQUE_ALPHA |
+                        (data[redOffset + src] & 0xFF) << 16 |
+                        (data[greenOffset + src] & 0xFF) << 8 |
+                        (data[blueOffset + src] & 0xFF);
+            }
+        }
     }
 
     public int getWidth() {
@@ -45,19 +255,234 @@ public class Image {
         return height;
     }
 
+    /**
+     * Compatibility view of a single pixel. Allocates a new Color on every call, so hot paths
+     * should use {@link #getRGB(int, int)} instead.
+     */
     public Color getPixel(int x, int y) {
-        return pixelArray[x][y];
+        return new Color(getRGB(x, y), true);
+    }
+
+    /**
+     * Returns the packed 0xAARRGGBB value of a single pixel, indexed like {@link #getPixel(int, int)}.
+     *
+     * @param row The row of the pixel.
+     * @param col The column of the pixel.
+     * @return The packed ARGB value of the pixel.
+     */
+    public int getRGB(int row, int col) {
+        int sourceRow = originRow + row;
+        int sourceCol = originCol + col;
+        if (sourceRow < clipTop || sourceRow >= clipBottom || sourceCol < clipLeft || sourceCol >= clipRight) {
+            return WHITE_RGB;
+        }
+        return pixels[sourceRow * stride + sourceCol];
+    }
+
+    /**
+     * Returns a 64-bit fingerprint of the content of this image: the same for any two images decoded from
+     * files of the same bytes, or with the same size and pixels, and different otherwise except for a
+     * 2^-64 chance of collision. An image decoded from a file is fingerprinted by the bytes it was decoded
+     * from, while decoding; any other image by its pixels, on first call.
+     *
+     * @return The fingerprint of this image.
+     */
+    public long getFingerprint() {
+        if (!fingerprinted) {
+            // Racing threads calculate the same value.
+            fingerprint = pixelFingerprint();
+            fingerprinted = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Hashes the size of this image, the rectangle of it that is not padding, and the pixels of that
+     * rectangle, two pixels to a word.
+     */
+    private long pixelFingerprint() {
+        boolean blank = clipBottom <= clipTop || clipRight <= clipLeft; // Only padding.
+        int top = blank ? 0 : clipTop - originRow;
+        int left = blank ? 0 : clipLeft - originCol;
+        int bottom = blank ? 0 : clipBottom - originRow;
+        int right = blank ? 0 : clipRight - originCol;
+        long hash = Fingerprint.mix(Fingerprint.PIXEL_SEED, pack(width, height));
+        hash = Fingerprint.mix(hash, pack(top, left));
+        hash = Fingerprint.mix(hash, pack(bottom, right));
+        if (!blank) {
+            for (int row = clipTop; row < clipBottom; row++) {
+                int rowStart = row * stride;
+                int col = clipLeft;
+                for (; col + 1 < clipRight; col += 2) {
+                    hash = Fingerprint.mix(hash, pack(pixels[rowStart + col], pixels[rowStart + col + 1]));
+                }
+                if (col < clipRight) {
+                    hash = Fingerprint.mix(hash, pack(pixels[rowStart + col], 0));
+                }
+            }
+        }
+        return Fingerprint.finish(hash, (long) (bottom - top) * (right - left));
+    }
+
+    private static long pack(int high, int low) {
+        return (long) high << Integer.SIZE | (low & 0xFFFFFFFFL);
+    }
+
+    /**
+     * Returns the sum of the grey values of all pixels of this image, scaled by
+     * GreySumTable.WEIGHT_SCALE, where white padding counts as white pixels.
+     * Takes O(1) time, using the summed-area table of the underlying pixels, which is built if needed.
+     *
+     * @return The scaled grey sum of this image.
+     */
+    long greySum() {
+        return greySum(root.getGreySumTable(1));
+    }
+
+    /**
+     * Returns the same value as greySum from a summed-area table of the underlying pixels, such as the
+     * one prepareGreySums returned.
+     *
+     * @param table The summed-area table of the pixels of this image's root.
+     * @return The scaled grey sum of this image.
+     */
+    long greySum(GreySumTable table) {
+        long whitePixels = (long) width * height;
+        long sum = 0;
+        if (clipBottom > clipTop && clipRight > clipLeft) {
+            sum = table.sum(clipTop, clipLeft, clipBottom, clipRight);
+            whitePixels -= (long) (clipBottom - clipTop) * (clipRight - clipLeft);
+        }
+        return sum + whitePixels * GreySumTable.WHITE_GREY;
+    }
+
+    /**
+     * Returns the same value as greySum by scanning the pixels of this image, without building or
+     * using a summed-area table. Cheaper than the table when only a few views of an image are summed.
+     *
+     * @param rowKernel The kernel summing every row, or null to sum the pixels one by one.
+     * @return The scaled grey sum of this image.
+     */
+    long scanGreySum(RowGreySum rowKernel) {
+        long whitePixels = (long) width * height;
+        long sum = 0;
+        for (int row = clipTop; row < clipBottom; row++) {
+            int rowStart = row * stride;
+            if (rowKernel != null) {
+                sum += rowKernel.sum(pixels, rowStart + clipLeft, rowStart + clipRight);
+                continue;
+            }
+            for (int col = clipLeft; col < clipRight; col++) {
+                sum += GreySumTable.grey(pixels[rowStart + col]);
+            }
+        }
+        if (clipBottom > clipTop && clipRight > clipLeft) {
+            whitePixels -= (long) (clipBottom - clipTop) * (clipRight - clipLeft);
+        }
+        return sum + whitePixels * GreySumTable.WHITE_GREY;
+    }
+
+    /**
+     * Tells whether this image has exactly the same pixels as another image.
+     * Views laid out alike over their pixels (such as the same sub-image of two frames of the same
+     * size) are compared row by row in bulk; any other pair is compared pixel by pixel.
+     *
+     * @param other The image to compare to.
+     * @return True if both images have the same size and the same pixels.
+     */
+    boolean hasSamePixels(Image other) {
+        if (width != other.width || height != other.height) {
+            return false;
+        }
+        boolean blank = clipBottom <= clipTop || clipRight <= clipLeft; // Only padding.
+        boolean otherBlank = other.clipBottom <= other.clipTop || other.clipRight <= other.clipLeft;
+        if (blank && otherBlank) {
+            return true;
+        }
+        int top = clipTop - originRow;
+        int left = clipLeft - originCol;
+        if (blank || otherBlank || top != other.clipTop - other.originRow || left != other.clipLeft - other.originCol ||
+                clipBottom - clipTop != other.clipBottom - other.clipTop ||
+                clipRight - clipLeft != other.clipRight - other.clipLeft) {
+            for (int row = 0; row < height; row++) {
+                for (int col = 0; col < width; col++) {
+                    if (getRGB(row, col) != other.getRGB(row, col)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+        int rowLength = clipRight - clipLeft;
+        for (int row = 0; row < clipBottom - clipTop; row++) {
+            int start = (clipTop + row) * stride + clipLeft;
+            int otherStart = (other.clipTop + row) * other.stride + other.clipLeft;
+            if (Arrays.mismatch(pixels, start, start + rowLength,
+                    other.pixels, otherStart, otherStart + rowLength) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the summed-area table of the pixels of this image for calculating a brightness matrix, or
+     * null if the views should rather be scanned (see scanGreySum).
+     * The table takes a long per pixel, twice the memory of the pixels (about 400MB for a 50 megapixel
+     * photo), and building it costs about as much as scanning the pixels once. So the first matrix of an
+     * image is scanned, and the table is only built for the second, when it starts paying off. It is
+     * kept through a soft reference, so it is dropped, to be rebuilt if needed again, when memory runs
+     * low; callers keep it alive by holding the returned table while they use it.
+     *
+     * @param parallelism The maximal number of threads to use for building the table.
+     * @return The table, or null for the first matrix of the pixels.
+     */
+    GreySumTable prepareGreySums(int parallelism) {
+        return root.getOrSkipGreySumTable(parallelism);
+    }
+
+    private GreySumTable getOrSkipGreySumTable(int parallelism) {
+        synchronized (this) {
+            if (!scannedOnce && cachedGreySumTable() == null) {
+                scannedOnce = true;
+                return null;
+            }
+        }
+        return getGreySumTable(parallelism);
+    }
+
+    /**
+     * Returns the summed-area table of this (root) image's pixels, building it if it is not built, or
+     * was dropped.
+     */
+    private GreySumTable getGreySumTable(int parallelism) {
+        GreySumTable table = cachedGreySumTable();
+        if (table == null) {
+            synchronized (this) {
+                table = cachedGreySumTable();
+                if (table == null) {
+                    table = new GreySumTable(pixels, stride, width, height, parallelism);
+                    greySumTable = new SoftReference<>(table);
+                }
+            }
+        }
+        return table;
+    }
+
+    private GreySumTable cachedGreySumTable() {
+        SoftReference<GreySumTable> reference = greySumTable;
+        return reference == null ? null : reference.get();
     }
 
     public void saveImage(String fileName){
-        // Initialize BufferedImage, assuming Color[][] is already properly populated.
-        BufferedImage bufferedImage = new BufferedImage(pixelArray[0].length, pixelArray.length,
-                BufferedImage.TYPE_INT_RGB);
-        // Set each pixel of the BufferedImage to the color from the Color[][].
-        for (int x = 0; x < pixelArray.length; x++) {
-            for (int y = 0; y < pixelArray[x].length; y++) {
-                bufferedImage.setRGB(y, x, pixelArray[x][y].getRGB());
+        // Initialize BufferedImage and copy the pixels into it row by row.
+        BufferedImage bufferedImage = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] rowPixels = new int[width];
+        for (int i = 0; i < height; i++) {
+            for (int j = 0; j < width; j++) {
+                rowPixels[j] = getRGB(i, j);
             }
+            bufferedImage.setRGB(0, i, width, 1, rowPixels, 0, width);
         }
         File outputfile = new File(fileName+".jpeg");
         try {
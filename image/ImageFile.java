@@ -0,0 +1,148 @@
+package image;
+
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * An image file whose size is known as soon as it is opened, but whose pixels are decoded (and whose
+ * bytes are fingerprinted, as they are decoded) only when first needed, or in the background after
+ * startLoading.
+ * Opening reads the header alone, so it takes about the same time for any image size.
+ */
+public class ImageFile {
+    private static final String LOADER_THREAD_NAME = "image-loader";
+
+    private final String filename;
+    private final int width;
+    private final int height;
+    private final FutureTask<Image> decoding; // Decodes the image, at most once.
+    private volatile long fingerprint; // Only valid once fingerprinted is set.
+    private volatile boolean fingerprinted;
+    private boolean loadingStarted; // Guarded by this.
+
+    /**
+     * Opens an image file and reads its size from its header.
+     *
+     * @param filename The image file.
+     * @throws IOException If the file cannot be read or its format is not supported.
+     */
+    public ImageFile(String filename) throws IOException {
+        this.filename = filename;
+        try (ImageInputStream input = ImageReaders.openStream(filename)) {
+            ImageReader reader = ImageReaders.openReader(input, filename, true);
+            try {
+                this.width = reader.getWidth(0);
+                this.height = reader.getHeight(0);
+            } finally {
+                reader.dispose();
+            }
+        }
+        this.decoding = new FutureTask<>(() -> new Image(filename));
+    }
+
+    public String getFilename() {
+        return filename;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the fingerprint of the image, the same as Image.getFingerprint of the decoded image.
+     * Once decoding started, that is the fingerprint of the decoded image, waiting for it if needed;
+     * before, the file's bytes are hashed without decoding them, on the first call. That fingerprint
+     * only serves to look up matrices: if the file is replaced before it is decoded, it describes the old
+     * bytes, so matrices calculated from the decoded image must be keyed by the image's own fingerprint.
+     *
+     * @return The fingerprint of the image.
+     * @throws IOException If the file cannot be read or decoded.
+     */
+    public long getFingerprint() throws IOException {
+        Image image = getLoadedImage();
+        if (image == null && isLoadingStarted()) {
+            image = getImage(); // Hashed while decoding; the file is not read a second time.
+        }
+        if (image != null) {
+            return image.getFingerprint();
+        }
+        if (!fingerprinted) {
+            fingerprint = Fingerprint.ofFile(filename);
+            fingerprinted = true;
+        }
+        return fingerprint;
+    }
+
+    /**
+     * Starts decoding the image on a low-priority daemon thread, so that it is ready, or nearly so,
+     * when it is first needed. Does nothing if it was already started.
+     */
+    public synchronized void startLoading() {
+        if (loadingStarted) {
+            return;
+        }
+        loadingStarted = true;
+        Thread loader = new Thread(decoding, LOADER_THREAD_NAME);
+        loader.setDaemon(true);
+        loader.setPriority(Thread.MIN_PRIORITY);
+        loader.start();
+    }
+
+    /**
+     * Tells whether startLoading was called.
+     *
+     * @return True if the image is being decoded, or was decoded, in the background.
+     */
+    public synchronized boolean isLoadingStarted() {
+        return loadingStarted;
+    }
+
+    /**
+     * Returns the decoded image if it was already decoded, without waiting or decoding it.
+     *
+     * @return The decoded image, or null if it is not decoded yet or could not be decoded.
+     */
+    public Image getLoadedImage() {
+        if (!decoding.isDone()) {
+            return null;
+        }
+        try {
+            return decoding.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the decoded image, decoding it on the calling thread unless it is already decoded or
+     * being decoded in the background (in which case this waits for it). Always returns the same Image.
+     *
+     * @return The decoded image.
+     * @throws IOException If the image cannot be decoded.
+     */
+    public Image getImage() throws IOException {
+        decoding.run(); // Does nothing if the image was already decoded or is being decoded.
+        try {
+            return decoding.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+}
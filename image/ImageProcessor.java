@@ -2,8 +2,6 @@ package image;
 
 import ascii_art.exceptions.ImageProcessorExceptions;
 
-import java.awt.*;
-
 /**
  * The ImageProcessor class provides various utilities for processing images, such as extending
  * their dimensions to powers of two, dividing them into smaller sub-images,
@@ -14,15 +12,97 @@ public class ImageProcessor {
     private static final String INVALID_RES_EXCEPTION = "Resolution must be smaller than the image dim.";
     private static final String INVALID_IMAGE_DIM_EXCEPTION = "Image dimension must be positive and even.";
     private static final int MAX_RGB = 255;
+    private static final String VECTOR_KERNEL_CLASS = "image.VectorGreySum";
+    private static final RowGreySum VECTOR_KERNEL = loadVectorKernel(); // Null if the Vector API is absent.
+
+    private final int parallelism; // The maximal number of threads used for brightness calculations.
+    private final Kernel kernel; // How imageBrightness calculates.
+    private final RowGreySum rowKernel; // Sums rows of pixels when scanning, or null to sum pixel by pixel.
+
+    /**
+     * The ways imageBrightness may calculate the brightness of an image.
+     */
+    public enum Kernel {
+        /**
+         * Sums the grey value of every pixel as a double, as the original calculation did. The least exact
+         * kernel: its rounding error grows with the number of pixels (up to about numPixels * 2^-53
+         * relative).
+         */
+        DOUBLE,
+        /**
+         * Sums the grey values as exact integers scaled by 10000 (the luminance coefficients have four
+         * decimal digits), looked up per channel in 256-entry tables straight from the packed pixels,
+         * and divides once per image. The only error is the rounding of that division: at most half
+         * a unit in the last place of the result, 2^-54 (about 5.6e-17) for a result between 0 and 1,
+         * for images of up to 3.5 billion pixels. The same value as createBrightnessMatrix calculates.
+         */
+        FIXED_POINT,
+        /**
+         * Calculates the same exact integer sums as FIXED_POINT, a whole vector of pixels at a time, with
+         * the Vector API; also used by updateBrightnessMatrix to sum changed sub-images. Needs the
+         * jdk.incubator.vector module (java --add-modules jdk.incubator.vector); without it, this is
+         * FIXED_POINT (see isVectorKernelAvailable). Either way the results are bit-identical.
+         */
+        VECTOR
+    }
 
     /**
-     * Default constructor for ImageProcessor.
+     * Default constructor for ImageProcessor. Calculations run sequentially on the calling thread.
      */
     public ImageProcessor() {
+        this(1);
+    }
+
+    /**
+     * Constructs an ImageProcessor whose brightness calculations run on up to the given number of
+     * threads. Results are bit-identical to the sequential ones for any parallelism.
+     *
+     * @param parallelism The maximal number of threads to use (1 for sequential calculations).
+     */
+    public ImageProcessor(int parallelism) {
+        this(parallelism, Kernel.DOUBLE);
+    }
+
+    /**
+     * Constructs an ImageProcessor whose brightness calculations run on up to the given number of
+     * threads, and whose imageBrightness calculates with the given kernel.
+     *
+     * @param parallelism The maximal number of threads to use (1 for sequential calculations).
+     * @param kernel      The kernel of imageBrightness.
+     */
+    public ImageProcessor(int parallelism, Kernel kernel) {
+        this.parallelism = Math.max(1, parallelism);
+        this.kernel = kernel;
+        this.rowKernel = kernel == Kernel.VECTOR ? VECTOR_KERNEL : null;
+    }
+
+    /**
+     * Tells whether the VECTOR kernel can use the Vector API in this JVM, which it can only if the
+     * jdk.incubator.vector module was added at startup.
+     *
+     * @return True if the VECTOR kernel is vectorized, false if it falls back to FIXED_POINT.
+     */
+    public static boolean isVectorKernelAvailable() {
+        return VECTOR_KERNEL != null;
+    }
+
+    /**
+     * Loads the vectorized kernel by name, so that it is never called unless it loads, which it only
+     * does when the Vector API is present.
+     *
+     * @return The kernel, or null if it cannot be loaded.
+     */
+    private static RowGreySum loadVectorKernel() {
+        try {
+            return (RowGreySum) Class.forName(VECTOR_KERNEL_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null; // The jdk.incubator.vector module was not added, or the kernel was not built.
+        }
     }
 
     /**
      * Extends the dimensions of an image to the nearest power of two, filling added areas with white pixels.
+     * No pixel is copied: the result is a view of the given image that reads white in the added areas.
      *
      * @param image The image to extend.
      * @return A new Image object with extended dimensions.
@@ -38,23 +118,11 @@ public class ImageProcessor {
         int newWidth = extendDim(originalWidth);
         int newHeight = extendDim(originalHeight);
 
-        Color[][] extendedPixelArray = new Color[newHeight][newWidth];
-
         int extendWidthPixels = calculateSidePixels(originalWidth, newWidth);
         int extendHeightPixels = calculateSidePixels(originalHeight, newHeight);
 
-        for (int i = 0; i < newHeight; i++) {
-            for (int j = 0; j < newWidth; j++) {
-                if (i < extendHeightPixels || j < extendWidthPixels ||
-                        i >= originalHeight + extendHeightPixels || j >= originalWidth + extendWidthPixels) {
-                    extendedPixelArray[i][j] = Color.WHITE;
-                } else {
-                    extendedPixelArray[i][j] = image.getPixel(i - extendHeightPixels, j - extendWidthPixels);
-                }
-            }
-        }
-
-        return new Image(extendedPixelArray, newWidth, newHeight);
+        // The padding is virtual: the view reads white outside the original pixels.
+        return image.window(-extendHeightPixels, -extendWidthPixels, newWidth, newHeight);
     }
 
     /**
@@ -65,7 +133,7 @@ public class ImageProcessor {
      * @return The number of pixels to add on each side.
      * @throws ImageProcessorExceptions If the dimensions are not even.
      */
-    private int calculateSidePixels(int originalDim, int extendedDim) throws ImageProcessorExceptions {
+    static int calculateSidePixels(int originalDim, int extendedDim) throws ImageProcessorExceptions {
         if (extendedDim % 2 != 0 || originalDim % 2 != 0) {
             throw new ImageProcessorExceptions(INVALID_IMAGE_DIM_EXCEPTION);
         }
@@ -79,7 +147,7 @@ public class ImageProcessor {
      * @return The extended dimension, which is the nearest power of two.
      * @throws ImageProcessorExceptions If the original dimension is invalid.
      */
-    private int extendDim(int dim) throws ImageProcessorExceptions {
+    public static int extendDim(int dim) throws ImageProcessorExceptions {
         if ((dim > 0) && ((dim & (dim - 1)) == 0)) {
             return dim;
         } else {
@@ -109,6 +177,7 @@ public class ImageProcessor {
 
     /**
      * Divides an image into smaller sub-images of equal size based on the specified number of rows.
+     * The sub-images are views of the given image, so no pixel is copied.
      *
      * @param image             The image to divide.
      * @param numSubImagesInRow The number of sub-images in a row.
@@ -128,29 +197,144 @@ public class ImageProcessor {
 
         for (int row = 0; row < numSubImagesInRow; row++) {
             for (int col = 0; col < numSubImagesInCol; col++) {
-                Color[][] curSubArray = new Color[subImageHeight][subImageWidth];
-                for (int i = 0; i < subImageHeight; i++) {
-                    for (int j = 0; j < subImageWidth; j++) {
-                        curSubArray[i][j] = image.getPixel(row * subImageHeight + i, col * subImageWidth + j);
-                    }
-                }
-                subImages[row][col] = new Image(curSubArray, subImageWidth, subImageHeight);
+                subImages[row][col] = image.window(row * subImageHeight, col * subImageWidth,
+                        subImageWidth, subImageHeight);
             }
         }
 
         return subImages;
     }
 
+    /**
+     * Creates the BrightnessMatrix of an image at the given resolution: the image is padded to powers
+     * of two, divided into resolution sub-images per row, and the brightness of each sub-image is
+     * summed. The first matrix of an image scans its pixels once; later ones are read from a summed-area
+     * table of the image's grey values, built on the second call (see Image.prepareGreySums for its
+     * memory cost), so they take O(resolution^2) time regardless of the image size. The sums are the
+     * same exact integers either way. Both the table and the matrix are calculated on up to this
+     * processor's parallelism threads.
+     *
+     * @param image      The image to process.
+     * @param resolution The number of sub-images in a row.
+     * @return The brightness matrix of the image at the given resolution.
+     * @throws ImageProcessorExceptions If the image is null or the resolution exceeds its dimensions.
+     */
+    public BrightnessMatrix createBrightnessMatrix(Image image, int resolution)
+            throws ImageProcessorExceptions {
+        Image[][] subImages = divideImage(extendImage(image), resolution);
+        GreySumTable table = image.prepareGreySums(parallelism); // Null to scan the sub-images.
+        double[][] brightness = new double[subImages.length][subImages[0].length];
+        ParallelRows.forEach(brightness.length, parallelism, row -> {
+            for (int col = 0; col < brightness[row].length; col++) {
+                brightness[row][col] = subImageBrightness(subImages[row][col], table);
+            }
+        });
+        return new BrightnessMatrix(brightness);
+    }
+
+    /**
+     * Creates the BrightnessMatrix of a new version of an image (such as the next frame of an animation),
+     * reusing the brightness of every sub-image whose pixels did not change.
+     * Sub-images are compared with the same sub-images of the previous version in bulk, and only the
+     * changed ones are summed, without building a summed-area table; the sums are the same exact integers,
+     * so the matrix is identical to the one createBrightnessMatrix would return.
+     * If the previous version is missing or differs in size, the matrix is created from scratch.
+     *
+     * @param previousImage  The previous version of the image, or null.
+     * @param previousMatrix The brightness matrix of the previous version at the given resolution, or null.
+     * @param image          The image to process.
+     * @param resolution     The number of sub-images in a row.
+     * @return The brightness matrix of the image at the given resolution.
+     * @throws ImageProcessorExceptions If the image is null or the resolution exceeds its dimensions.
+     */
+    public BrightnessMatrix updateBrightnessMatrix(Image previousImage, BrightnessMatrix previousMatrix,
+                                                   Image image, int resolution)
+            throws ImageProcessorExceptions {
+        if (previousImage == null || previousMatrix == null || image == null ||
+                previousImage.getWidth() != image.getWidth() || previousImage.getHeight() != image.getHeight()) {
+            return createBrightnessMatrix(image, resolution);
+        }
+        Image[][] subImages = divideImage(extendImage(image), resolution);
+        Image[][] previousSubImages = divideImage(extendImage(previousImage), resolution);
+        if (previousMatrix.getNumRows() != subImages.length ||
+                previousMatrix.getNumCols() != subImages[0].length) {
+            return createBrightnessMatrix(image, resolution);
+        }
+
+        double[][] brightness = new double[subImages.length][subImages[0].length];
+        ParallelRows.forEach(brightness.length, parallelism, row -> {
+            for (int col = 0; col < brightness[row].length; col++) {
+                Image subImage = subImages[row][col];
+                brightness[row][col] = subImage.hasSamePixels(previousSubImages[row][col]) ?
+                        previousMatrix.getPixel(row, col) :
+                        brightness(subImage.scanGreySum(rowKernel),
+                                (long) subImage.getWidth() * subImage.getHeight());
+            }
+        });
+        return new BrightnessMatrix(brightness);
+    }
+
+    /**
+     * Calculates the brightness of a sub-image from the summed-area table of its pixels, or by scanning
+     * them.
+     *
+     * @param image The image for which the brightness is calculated.
+     * @param table The summed-area table of the image's pixels, or null to scan them.
+     * @return The brightness value as a double between 0 and 1.
+     * @throws ImageProcessorExceptions If the image dimensions are invalid.
+     */
+    private double subImageBrightness(Image image, GreySumTable table) throws ImageProcessorExceptions {
+        long numPixels = (long) image.getWidth() * image.getHeight();
+        if (numPixels == 0) {
+            throw new ImageProcessorExceptions(INVALID_IMAGE_DIM_EXCEPTION);
+        }
+        return brightness(table != null ? image.greySum(table) : image.scanGreySum(rowKernel), numPixels);
+    }
+
+    /**
+     * Converts the scaled grey sum of a rectangle of pixels into its brightness.
+     *
+     * @param greySum   The sum of the grey values of the pixels, scaled by GreySumTable.WEIGHT_SCALE.
+     * @param numPixels The number of pixels summed.
+     * @return The brightness value as a double between 0 and 1.
+     */
+    static double brightness(long greySum, long numPixels) {
+        return greySum / ((double) numPixels * MAX_RGB * GreySumTable.WEIGHT_SCALE);
+    }
+
     /**
      * Calculates the brightness of an image by averaging the brightness values of all its pixels.
      * The brightness is calculated using the formula:
-     * brightness = (0.2126 * R + 0.7152 * G + 0.0722 * B) / 255.
+     * brightness = (0.2126 * R + 0.7152 * G + 0.0722 * B) / 255,
+     * with this processor's kernel (see Kernel for the error of each).
      *
      * @param image The image for which the brightness is calculated.
      * @return The brightness value as a double between 0 and 1.
      * @throws ImageProcessorExceptions If the image dimensions are invalid.
      */
     public double imageBrightness(Image image) throws ImageProcessorExceptions {
+        if (kernel != Kernel.DOUBLE) {
+            return fixedPointBrightness(image);
+        }
+        return doubleBrightness(image);
+    }
+
+    /**
+     * Calculates the brightness of an image from the exact integer sum of its scaled grey values,
+     * vectorized if this processor's kernel is VECTOR and the Vector API is available.
+     */
+    private double fixedPointBrightness(Image image) throws ImageProcessorExceptions {
+        long numPixels = (long) image.getWidth() * image.getHeight();
+        if (numPixels == 0) {
+            throw new ImageProcessorExceptions(INVALID_IMAGE_DIM_EXCEPTION);
+        }
+        return brightness(image.scanGreySum(rowKernel), numPixels);
+    }
+
+    /**
+     * Calculates the brightness of an image by summing the grey values of its pixels as doubles.
+     */
+    private double doubleBrightness(Image image) throws ImageProcessorExceptions {
         int curWidth = image.getWidth();
         int curHeight = image.getHeight();
         double greyPixelsSum = 0;
@@ -161,9 +345,9 @@ public class ImageProcessor {
 
         for (int i = 0; i < curHeight; i++) {
             for (int j = 0; j < curWidth; j++) {
-                Color curPixel = image.getPixel(i, j);
-                double greyPixel = curPixel.getRed() * 0.2126 +
-                        curPixel.getGreen() * 0.7152 + curPixel.getBlue() * 0.0722;
+                int curPixel = image.getRGB(i, j);
+                double greyPixel = ((curPixel >> 16) & 0xFF) * 0.2126 +
+                        ((curPixel >> 8) & 0xFF) * 0.7152 + (curPixel & 0xFF) * 0.0722;
                 greyPixelsSum += greyPixel;
             }
         }
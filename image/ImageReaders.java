@@ -0,0 +1,59 @@
+package image;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * Opens image files for reading through an ImageReader, which, unlike ImageIO.read, can read the
+ * header alone, a region of the image, or one image of many.
+ */
+final class ImageReaders {
+    private static final String UNSUPPORTED_FORMAT_MESSAGE = "No image reader for ";
+    private static final String CANNOT_READ_MESSAGE = "Cannot read ";
+
+    private ImageReaders() {
+    }
+
+    /**
+     * Opens a file as an image input stream. The file is read on demand, not up front.
+     *
+     * @param filename The image file.
+     * @return The stream, to be closed by the caller.
+     * @throws IOException If the file cannot be read.
+     */
+    static ImageInputStream openStream(String filename) throws IOException {
+        File file = new File(filename);
+        if (!file.canRead()) {
+            throw new IOException(CANNOT_READ_MESSAGE + filename);
+        }
+        ImageInputStream input = ImageIO.createImageInputStream(file);
+        if (input == null) {
+            throw new IOException(UNSUPPORTED_FORMAT_MESSAGE + filename);
+        }
+        return input;
+    }
+
+    /**
+     * Finds a reader for the format of an image stream and sets it to read the stream.
+     *
+     * @param input          The stream.
+     * @param filename       The name of the file, for error messages.
+     * @param ignoreMetadata Whether the reader may skip the metadata of the images.
+     * @return The reader, to be disposed of by the caller.
+     * @throws IOException If the format is not supported.
+     */
+    static ImageReader openReader(ImageInputStream input, String filename, boolean ignoreMetadata)
+            throws IOException {
+        Iterator<ImageReader> readers = ImageIO.getImageReaders(input);
+        if (!readers.hasNext()) {
+            throw new IOException(UNSUPPORTED_FORMAT_MESSAGE + filename);
+        }
+        ImageReader reader = readers.next();
+        reader.setInput(input, false, ignoreMetadata);
+        return reader;
+    }
+}
@@ -0,0 +1,79 @@
+package image;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * Runs a loop over independent rows on the common fork/join pool, so no threads are created for it.
+ * The calling thread takes part in the loop, and the pool's daemon threads do the rest.
+ */
+class ParallelRows {
+    private static final int TASKS_PER_THREAD = 4; // Splits finer than the threads, for load balancing.
+
+    private ParallelRows() {
+    }
+
+    /**
+     * Calls body once for every row in [0, numRows), using up to parallelism threads.
+     * With a parallelism of 1 (or a single row) the rows are visited in order on the calling thread.
+     * The body must only write state owned by its own row.
+     *
+     * @param numRows     The number of rows.
+     * @param parallelism The maximal number of threads to use.
+     * @param body        The work to do for a single row.
+     */
+    static void forEach(int numRows, int parallelism, IntConsumer body) {
+        if (parallelism <= 1 || numRows <= 1) {
+            for (int row = 0; row < numRows; row++) {
+                body.accept(row);
+            }
+            return;
+        }
+        int numLanes = Math.min(parallelism, numRows);
+        int grain = Math.max(1, numRows / (numLanes * TASKS_PER_THREAD));
+        ForkJoinPool.commonPool().invoke(new LanesTask(0, numLanes, new AtomicInteger(), numRows, grain, body));
+    }
+
+    /**
+     * A fork/join task running a range of lanes, split in halves down to single lanes. Each lane takes
+     * the next grain rows not taken yet until none are left, so at most one thread per lane visits rows,
+     * and a lane that finishes early takes the rows a slower one would have visited.
+     */
+    private static class LanesTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int fromLane;
+        private final int toLane;
+        private final AtomicInteger nextRow;
+        private final int numRows;
+        private final int grain;
+        private final IntConsumer body;
+
+        LanesTask(int fromLane, int toLane, AtomicInteger nextRow, int numRows, int grain, IntConsumer body) {
+            this.fromLane = fromLane;
+            this.toLane = toLane;
+            this.nextRow = nextRow;
+            this.numRows = numRows;
+            this.grain = grain;
+            this.body = body;
+        }
+
+        @Override
+        protected void compute() {
+            if (toLane - fromLane > 1) {
+                int middle = (fromLane + toLane) >>> 1;
+                invokeAll(new LanesTask(fromLane, middle, nextRow, numRows, grain, body),
+                        new LanesTask(middle, toLane, nextRow, numRows, grain, body));
+                return;
+            }
+            for (int from = nextRow.getAndAdd(grain); from < numRows; from = nextRow.getAndAdd(grain)) {
+                int to = Math.min(from + grain, numRows);
+                for (int row = from; row < to; row++) {
+                    body.accept(row);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package image;
+
+/**
+ * Sums the grey values of a run of packed pixels. Implemented by kernels that ImageProcessor loads by
+ * name (such as VectorGreySum), so that nothing refers to them unless they load.
+ */
+interface RowGreySum {
+    /**
+     * Returns the scaled sum of the grey values of a run of packed pixels, the same as the sum of
+     * GreySumTable.grey over them.
+     *
+     * @param pixels Packed 0xAARRGGBB values.
+     * @param from   The index of the first pixel of the run.
+     * @param to     The index after the last pixel of the run.
+     * @return The sum of the grey values of the run, scaled by GreySumTable.WEIGHT_SCALE.
+     */
+    long sum(int[] pixels, int from, int to);
+}
@@ -0,0 +1,328 @@
+package image;
+
+import ascii_art.exceptions.ImageProcessorExceptions;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageTypeSpecifier;
+import javax.imageio.event.IIOReadUpdateListener;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.ColorModel;
+import java.awt.image.ComponentSampleModel;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Calculates the BrightnessMatrix of an image file without ever holding the whole image in memory.
+ * The grey values of the image are added to the sums of the sub-images they fall in as the image is
+ * decoded, and then dropped. The image is padded and divided exactly as
+ * ImageProcessor.createBrightnessMatrix does, and the sums are the same exact integers, so the matrix is
+ * identical to the one calculated from the decoded image.
+ *
+ * PNG and JPEG files have no random access to rows: reading a region of one decodes the file from its
+ * start. They are decoded in a single pass into a destination whose rows all share the memory of one
+ * row, and every row is consumed by an IIOReadUpdateListener as soon as it is written.
+ * Other formats (and interlaced PNGs, whose passes do not deliver whole rows) are read one band of rows
+ * at a time through an ImageReader source region.
+ */
+public class StreamingBrightnessReader {
+    /**
+     * The default memory budget for the decoded pixels of a single band.
+     */
+    public static final long DEFAULT_BAND_BYTES = 64L * 1024 * 1024;
+    private static final String INVALID_RES_EXCEPTION = "Resolution must be smaller than the image dim.";
+    private static final String INVALID_BAND_EXCEPTION = "Band memory budget must be positive.";
+    // A band is held twice: as decoded by the reader (up to 4 bytes a pixel) and as packed ints.
+    private static final int BYTES_PER_PIXEL = 2 * Integer.BYTES;
+    private static final int FIRST_IMAGE = 0;
+    // Formats whose readers write a destination row by row, reporting every row to update listeners:
+    private static final Set<String> SEQUENTIAL_FORMATS = Set.of("png", "jpeg");
+    private static final int SHARED_ROW_STRIDE = 0; // The scanline stride at which all rows overlap.
+
+    private final long bandBytes; // The memory budget for the pixels of a single band.
+
+    /**
+     * Constructs a reader with the default band memory budget.
+     */
+    public StreamingBrightnessReader() {
+        this(DEFAULT_BAND_BYTES);
+    }
+
+    /**
+     * Constructs a reader whose bands take up to about the given number of bytes.
+     * A band is never shorter than one row, whatever the budget.
+     *
+     * @param bandBytes The memory budget for the pixels of a single band.
+     * @throws ImageProcessorExceptions If the budget is not positive.
+     */
+    public StreamingBrightnessReader(long bandBytes) throws ImageProcessorExceptions {
+        if (bandBytes <= 0) {
+            throw new ImageProcessorExceptions(INVALID_BAND_EXCEPTION);
+        }
+        this.bandBytes = bandBytes;
+    }
+
+    /**
+     * Reads the number of pixels of an image file from its header, without decoding it.
+     *
+     * @param filename The image file.
+     * @return The width times the height of the image.
+     * @throws IOException If the file cannot be read or its format is not supported.
+     */
+    public static long countPixels(String filename) throws IOException {
+        try (ImageInputStream input = ImageReaders.openStream(filename)) {
+            ImageReader reader = ImageReaders.openReader(input, filename, true);
+            try {
+                return (long) reader.getWidth(FIRST_IMAGE) * reader.getHeight(FIRST_IMAGE);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    /**
+     * Creates the BrightnessMatrix of an image file at the given resolution, one row or band at a time.
+     *
+     * @param filename   The image file.
+     * @param resolution The number of sub-images in a row.
+     * @return The brightness matrix of the image at the given resolution.
+     * @throws IOException              If the file cannot be read or its format is not supported.
+     * @throws ImageProcessorExceptions If the image dimensions are invalid or the resolution exceeds them.
+     */
+    public BrightnessMatrix createBrightnessMatrix(String filename, int resolution)
+            throws IOException, ImageProcessorExceptions {
+        try (ImageInputStream input = ImageReaders.openStream(filename)) {
+            ImageReader reader = ImageReaders.openReader(input, filename, true);
+            try {
+                return createBrightnessMatrix(reader, resolution);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BrightnessMatrix createBrightnessMatrix(ImageReader reader, int resolution)
+            throws IOException, ImageProcessorExceptions {
+        int width = reader.getWidth(FIRST_IMAGE);
+        int height = reader.getHeight(FIRST_IMAGE);
+        int paddedWidth = ImageProcessor.extendDim(width);
+        int paddedHeight = ImageProcessor.extendDim(height);
+        int left = ImageProcessor.calculateSidePixels(width, paddedWidth);
+        int top = ImageProcessor.calculateSidePixels(height, paddedHeight);
+        if (resolution > paddedWidth || resolution > paddedHeight) {
+            throw new ImageProcessorExceptions(INVALID_RES_EXCEPTION);
+        }
+
+        // The same grid as ImageProcessor.divideImage, in padded coordinates:
+        int tileWidth = paddedWidth / resolution;
+        int tileHeight = paddedHeight / resolution;
+        int numCols = paddedHeight / tileHeight;
+        long[][] sums = new long[resolution][numCols];
+
+        if (!readSequentially(reader, width, height, top, left, tileWidth, tileHeight, sums)) {
+            for (long[] rowSums : sums) {
+                Arrays.fill(rowSums, 0);
+            }
+            readBands(reader, width, height, top, left, tileWidth, tileHeight, sums);
+        }
+
+        double[][] brightness = new double[resolution][numCols];
+        long tilePixels = (long) tileWidth * tileHeight;
+        for (int row = 0; row < resolution; row++) {
+            long imageRows = overlap(row * tileHeight, tileHeight, top, height);
+            for (int col = 0; col < numCols; col++) {
+                long imagePixels = imageRows * overlap(col * tileWidth, tileWidth, left, width);
+                long whitePixels = tilePixels - imagePixels;
+                brightness[row][col] = ImageProcessor.brightness(
+                        sums[row][col] + whitePixels * GreySumTable.WHITE_GREY, tilePixels);
+            }
+        }
+        return new BrightnessMatrix(brightness);
+    }
+
+    /**
+     * Decodes the image in a single pass, adding every row to the sums as soon as the reader writes it.
+     *
+     * @return True if every row of the image was added; false if its reader, image type or passes do not
+     * allow reading it row by row, in which case the sums are left partial.
+     */
+    private static boolean readSequentially(ImageReader reader, int width, int height, int top, int left,
+                                            int tileWidth, int tileHeight, long[][] sums) throws IOException {
+        if (!SEQUENTIAL_FORMATS.contains(reader.getFormatName().toLowerCase(Locale.ROOT)) ||
+                reader.isRandomAccessEasy(FIRST_IMAGE) || reader.isImageTiled(FIRST_IMAGE)) {
+            return false;
+        }
+        // The type the reader would decode to by default, so rows decode exactly as in a band:
+        ImageTypeSpecifier type = reader.getImageTypes(FIRST_IMAGE).next();
+        SampleModel rowModel = type.getSampleModel(width, 1);
+        if (!(rowModel instanceof ComponentSampleModel)) {
+            return false;
+        }
+        ComponentSampleModel componentModel = (ComponentSampleModel) rowModel;
+        SampleModel sharedRowModel = new ComponentSampleModel(componentModel.getDataType(), width, height,
+                componentModel.getPixelStride(), SHARED_ROW_STRIDE, componentModel.getBankIndices(),
+                componentModel.getBandOffsets());
+        DataBuffer row = rowModel.createDataBuffer();
+        ColorModel colorModel = type.getColorModel();
+        BufferedImage destination = new BufferedImage(colorModel,
+                Raster.createWritableRaster(sharedRowModel, row, null), colorModel.isAlphaPremultiplied(), null);
+        BufferedImage rowImage = new BufferedImage(colorModel,
+                Raster.createWritableRaster(rowModel, row, null), colorModel.isAlphaPremultiplied(), null);
+
+        RowListener listener =
+                new RowListener(reader, rowImage, width, top, left, tileWidth, tileHeight, sums);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setDestination(destination);
+        reader.addIIOReadUpdateListener(listener);
+        try {
+            reader.read(FIRST_IMAGE, param);
+        } finally {
+            reader.removeIIOReadUpdateListener(listener);
+        }
+        return listener.rowByRow && listener.numRows == height;
+    }
+
+    /**
+     * Decodes the image one band of rows at a time, each through its own source region.
+     */
+    private void readBands(ImageReader reader, int width, int height, int top, int left,
+                           int tileWidth, int tileHeight, long[][] sums) throws IOException {
+        int bandHeight = (int) Math.max(1, Math.min(height, bandBytes / ((long) BYTES_PER_PIXEL * width)));
+        ImageReadParam param = reader.getDefaultReadParam();
+        for (int firstRow = 0; firstRow < height; firstRow += bandHeight) {
+            int numRows = Math.min(bandHeight, height - firstRow);
+            param.setSourceRegion(new Rectangle(0, firstRow, width, numRows));
+            BufferedImage band = reader.read(FIRST_IMAGE, param);
+            int[] pixels = Image.decodePixels(band);
+            addBand(pixels, width, numRows, top + firstRow, left, tileWidth, tileHeight, sums);
+        }
+    }
+
+    /**
+     * Adds every whole row a reader writes to the sums, and aborts the read as soon as the reader writes
+     * anything else (such as a pass of an interlaced image).
+     */
+    private static final class RowListener implements IIOReadUpdateListener {
+        private final ImageReader reader;
+        private final BufferedImage rowImage; // A view of the single row the reader writes every row into.
+        private final int width;
+        private final int top;
+        private final int left;
+        private final int tileWidth;
+        private final int tileHeight;
+        private final long[][] sums;
+        private boolean rowByRow = true; // Whether every update so far was a whole row.
+        private int numRows; // The number of rows added to the sums in the current pass.
+
+        private RowListener(ImageReader reader, BufferedImage rowImage, int width, int top, int left,
+                            int tileWidth, int tileHeight, long[][] sums) {
+            this.reader = reader;
+            this.rowImage = rowImage;
+            this.width = width;
+            this.top = top;
+            this.left = left;
+            this.tileWidth = tileWidth;
+            this.tileHeight = tileHeight;
+            this.sums = sums;
+        }
+
+        @Override
+        public void passStarted(ImageReader source, BufferedImage theImage, int pass, int minPass, int maxPass,
+                                int minX, int minY, int periodX, int periodY, int[] bands) {
+            if (periodX != 1 || periodY != 1) {
+                stop();
+                return;
+            }
+            // Every pass of a progressive JPEG delivers all the rows again, each time more precisely.
+            for (long[] rowSums : sums) {
+                Arrays.fill(rowSums, 0);
+            }
+            numRows = 0;
+        }
+
+        @Override
+        public void imageUpdate(ImageReader source, BufferedImage theImage, int minX, int minY, int width,
+                                int height, int periodX, int periodY, int[] bands) {
+            if (!rowByRow) {
+                return;
+            }
+            if (minX != 0 || width != this.width || height != 1 || periodX != 1 || periodY != 1) {
+                stop();
+                return;
+            }
+            addBand(Image.decodePixels(rowImage), width, 1, top + minY, left, tileWidth, tileHeight, sums);
+            numRows++;
+        }
+
+        private void stop() {
+            rowByRow = false;
+            reader.abort();
+        }
+
+        @Override
+        public void passComplete(ImageReader source, BufferedImage theImage) {
+        }
+
+        @Override
+        public void thumbnailPassStarted(ImageReader source, BufferedImage theThumbnail, int pass, int minPass,
+                                         int maxPass, int minX, int minY, int periodX, int periodY,
+                                         int[] bands) {
+        }
+
+        @Override
+        public void thumbnailUpdate(ImageReader source, BufferedImage theThumbnail, int minX, int minY,
+                                    int width, int height, int periodX, int periodY, int[] bands) {
+        }
+
+        @Override
+        public void thumbnailPassComplete(ImageReader source, BufferedImage theThumbnail) {
+        }
+    }
+
+    /**
+     * Adds the grey values of a band of pixels to the sums of the sub-images they belong to.
+     *
+     * @param pixels     The packed pixels of the band, row by row.
+     * @param width      The width of the band (and of the image).
+     * @param numRows    The number of rows in the band.
+     * @param paddedRow  The row of the padded image at which the band starts.
+     * @param left       The number of padding columns to the left of the image.
+     * @param tileWidth  The width of a sub-image.
+     * @param tileHeight The height of a sub-image.
+     * @param sums       The scaled grey sums of the sub-images, indexed by row and then by column.
+     */
+    private static void addBand(int[] pixels, int width, int numRows, int paddedRow, int left,
+                                int tileWidth, int tileHeight, long[][] sums) {
+        for (int i = 0; i < numRows; i++) {
+            int tileRow = (paddedRow + i) / tileHeight;
+            if (tileRow >= sums.length) {
+                break; // Rows past the last sub-image are not part of any.
+            }
+            long[] rowSums = sums[tileRow];
+            int rowStart = i * width;
+            for (int tileCol = 0; tileCol < rowSums.length; tileCol++) {
+                int from = Math.max(0, tileCol * tileWidth - left);
+                int to = Math.min(width, (tileCol + 1) * tileWidth - left);
+                long sum = 0;
+                for (int j = from; j < to; j++) {
+                    sum += GreySumTable.grey(pixels[rowStart + j]);
+                }
+                rowSums[tileCol] += sum;
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the intersection of two ranges.
+     */
+    static long overlap(int start, int length, int otherStart, int otherLength) {
+        return Math.max(0, Math.min(start + length, otherStart + otherLength) - Math.max(start, otherStart));
+    }
+}
@@ -0,0 +1,159 @@
+package image;
+
+import ascii_art.exceptions.ImageProcessorExceptions;
+
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+
+/**
+ * Estimates the BrightnessMatrix of an image file at a low resolution from a subsampled decode: the reader
+ * is asked for only every n-th pixel of every n-th row (ImageReader source subsampling), with n chosen so
+ * that every sub-image still gets at least MIN_SAMPLES_PER_SIDE samples across and down.
+ * The image is padded and divided exactly as ImageProcessor.createBrightnessMatrix does; the white padding
+ * of every sub-image is counted exactly, and the grey sum of its image part is estimated from the mean of
+ * the samples that fall in it, so the result is close to, but not the same as, the exact matrix.
+ *
+ * How much decoding this saves depends on the reader: the JDK's JPEG reader still decompresses every
+ * block, so the saving there is mostly in color conversion, in the memory of the decoded pixels, and in
+ * never building a summed-area table of the full image.
+ */
+public class SubsampledBrightnessReader {
+    /**
+     * The minimal number of samples across (and down) a sub-image.
+     */
+    public static final int MIN_SAMPLES_PER_SIDE = 16;
+    private static final String INVALID_RES_EXCEPTION = "Resolution must be smaller than the image dim.";
+    private static final int FIRST_IMAGE = 0;
+
+    /**
+     * Returns the subsampling at which an image would be decoded for the given resolution: the largest
+     * power of two that leaves at least MIN_SAMPLES_PER_SIDE samples across and down every sub-image.
+     *
+     * @param width      The width of the image.
+     * @param height     The height of the image.
+     * @param resolution The number of sub-images in a row.
+     * @return The subsampling: 1 if every pixel would be decoded.
+     * @throws ImageProcessorExceptions If the image dimensions are invalid.
+     */
+    public static int subsamplingFor(int width, int height, int resolution) throws ImageProcessorExceptions {
+        int tileSide = Math.min(ImageProcessor.extendDim(width), ImageProcessor.extendDim(height)) /
+                Math.max(1, resolution);
+        return Math.max(1, Integer.highestOneBit(Math.max(1, tileSide / MIN_SAMPLES_PER_SIDE)));
+    }
+
+    /**
+     * Estimates the BrightnessMatrix of an image file at the given resolution from a subsampled decode.
+     *
+     * @param filename   The image file.
+     * @param resolution The number of sub-images in a row.
+     * @return The estimated brightness matrix of the image at the given resolution.
+     * @throws IOException              If the file cannot be read or its format is not supported.
+     * @throws ImageProcessorExceptions If the image dimensions are invalid or the resolution exceeds them.
+     */
+    public BrightnessMatrix createBrightnessMatrix(String filename, int resolution)
+            throws IOException, ImageProcessorExceptions {
+        try (ImageInputStream input = ImageReaders.openStream(filename)) {
+            ImageReader reader = ImageReaders.openReader(input, filename, true);
+            try {
+                return createBrightnessMatrix(reader, resolution);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    private BrightnessMatrix createBrightnessMatrix(ImageReader reader, int resolution)
+            throws IOException, ImageProcessorExceptions {
+        int width = reader.getWidth(FIRST_IMAGE);
+        int height = reader.getHeight(FIRST_IMAGE);
+        int paddedWidth = ImageProcessor.extendDim(width);
+        int paddedHeight = ImageProcessor.extendDim(height);
+        int left = ImageProcessor.calculateSidePixels(width, paddedWidth);
+        int top = ImageProcessor.calculateSidePixels(height, paddedHeight);
+        if (resolution > paddedWidth || resolution > paddedHeight) {
+            throw new ImageProcessorExceptions(INVALID_RES_EXCEPTION);
+        }
+
+        int subsampling = subsamplingFor(width, height, resolution);
+        ImageReadParam param = reader.getDefaultReadParam();
+        param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+        BufferedImage sampled = reader.read(FIRST_IMAGE, param);
+        int sampledWidth = sampled.getWidth();
+        int[] samples = Image.decodePixels(sampled);
+
+        // The same grid as ImageProcessor.divideImage, in padded coordinates:
+        int tileWidth = paddedWidth / resolution;
+        int tileHeight = paddedHeight / resolution;
+        int numCols = paddedHeight / tileHeight;
+        int[][] sampleRows = sampleRanges(resolution, tileHeight, top, height, subsampling, sampled.getHeight());
+        int[][] sampleCols = sampleRanges(numCols, tileWidth, left, width, subsampling, sampledWidth);
+
+        double[][] brightness = new double[resolution][numCols];
+        long tilePixels = (long) tileWidth * tileHeight;
+        for (int row = 0; row < resolution; row++) {
+            long imageRows = StreamingBrightnessReader.overlap(row * tileHeight, tileHeight, top, height);
+            for (int col = 0; col < numCols; col++) {
+                long imagePixels = imageRows *
+                        StreamingBrightnessReader.overlap(col * tileWidth, tileWidth, left, width);
+                long greySum = (tilePixels - imagePixels) * GreySumTable.WHITE_GREY;
+                if (imagePixels > 0) {
+                    greySum += estimateGreySum(samples, sampledWidth, sampleRows[row], sampleCols[col],
+                            imagePixels);
+                }
+                brightness[row][col] = ImageProcessor.brightness(greySum, tilePixels);
+            }
+        }
+        return new BrightnessMatrix(brightness);
+    }
+
+    /**
+     * Finds, along one axis, the samples that fall in the image part of every sub-image. A sub-image
+     * whose image part is too thin to hold a sample (at the edge of the image) gets the nearest one.
+     *
+     * @param numTiles    The number of sub-images along the axis.
+     * @param tileSize    The size of a sub-image along the axis.
+     * @param padding     The padding before the image along the axis.
+     * @param size        The size of the image along the axis.
+     * @param subsampling The distance between two samples.
+     * @param numSamples  The number of samples along the axis.
+     * @return For every sub-image, the index of its first sample and the index after its last one
+     * (an empty range if it holds no image pixels).
+     */
+    private static int[][] sampleRanges(int numTiles, int tileSize, int padding, int size, int subsampling,
+                                        int numSamples) {
+        int[][] ranges = new int[numTiles][2];
+        for (int tile = 0; tile < numTiles; tile++) {
+            int from = Math.max(0, tile * tileSize - padding);
+            int to = Math.min(size, (tile + 1) * tileSize - padding);
+            if (from >= to) {
+                continue;
+            }
+            // Sample k is the pixel at k * subsampling.
+            int firstSample = Math.min(numSamples - 1, (from + subsampling - 1) / subsampling);
+            int endSample = Math.min(numSamples, (to + subsampling - 1) / subsampling);
+            ranges[tile][0] = firstSample;
+            ranges[tile][1] = Math.max(endSample, firstSample + 1);
+        }
+        return ranges;
+    }
+
+    /**
+     * Estimates the scaled grey sum of the image part of a sub-image as the mean grey value of its
+     * samples times its number of pixels.
+     */
+    private static long estimateGreySum(int[] samples, int sampledWidth, int[] rows, int[] cols,
+                                        long imagePixels) {
+        long sum = 0;
+        for (int row = rows[0]; row < rows[1]; row++) {
+            int rowStart = row * sampledWidth;
+            for (int col = cols[0]; col < cols[1]; col++) {
+                sum += GreySumTable.grey(samples[rowStart + col]);
+            }
+        }
+        long numSamples = (long) (rows[1] - rows[0]) * (cols[1] - cols[0]);
+        return Math.round((double) sum / numSamples * imagePixels);
+    }
+}
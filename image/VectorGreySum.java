@@ -0,0 +1,60 @@
+package image;
+
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * Sums the grey values of runs of packed pixels with the Vector API, as many pixels at a time as the
+ * CPU's widest integer vectors hold.
+ * Each channel is unpacked with a shift and a mask and summed in its own integer lanes; the three channel
+ * sums are weighted only when they are reduced, so the result is the same exact integer as the scalar
+ * sum of GreySumTable.grey, with no multiplication per pixel.
+ * Needs the jdk.incubator.vector module (java --add-modules jdk.incubator.vector); without it this class
+ * cannot be loaded, and ImageProcessor falls back to the scalar kernel. It is the only class compiled
+ * against that module, and is only instantiated by name.
+ */
+final class VectorGreySum implements RowGreySum {
+    private static final VectorSpecies<Integer> SPECIES = IntVector.SPECIES_PREFERRED;
+    private static final int CHANNEL_MASK = 0xFF;
+    private static final int RED_SHIFT = 16;
+    private static final int GREEN_SHIFT = 8;
+    // Channel values are at most 255, so the lanes of a channel (and their total) cannot overflow
+    // over this many pixels:
+    private static final int MAX_PIXELS_PER_FLUSH = Integer.MAX_VALUE / CHANNEL_MASK;
+
+    VectorGreySum() {
+    }
+
+    @Override
+    public long sum(int[] pixels, int from, int to) {
+        int lanes = SPECIES.length();
+        int vectorEnd = from + SPECIES.loopBound(to - from);
+        int flushPixels = SPECIES.loopBound(MAX_PIXELS_PER_FLUSH);
+        long red = 0;
+        long green = 0;
+        long blue = 0;
+        int i = from;
+        while (i < vectorEnd) {
+            int flushEnd = (int) Math.min(vectorEnd, (long) i + flushPixels);
+            IntVector redLanes = IntVector.zero(SPECIES);
+            IntVector greenLanes = IntVector.zero(SPECIES);
+            IntVector blueLanes = IntVector.zero(SPECIES);
+            for (; i < flushEnd; i += lanes) {
+                IntVector rgb = IntVector.fromArray(SPECIES, pixels, i);
+                redLanes = redLanes.add(rgb.lanewise(VectorOperators.LSHR, RED_SHIFT).and(CHANNEL_MASK));
+                greenLanes = greenLanes.add(rgb.lanewise(VectorOperators.LSHR, GREEN_SHIFT).and(CHANNEL_MASK));
+                blueLanes = blueLanes.add(rgb.and(CHANNEL_MASK));
+            }
+            red += redLanes.reduceLanesToLong(VectorOperators.ADD);
+            green += greenLanes.reduceLanesToLong(VectorOperators.ADD);
+            blue += blueLanes.reduceLanesToLong(VectorOperators.ADD);
+        }
+        long sum = red * GreySumTable.RED_WEIGHT + green * GreySumTable.GREEN_WEIGHT +
+                blue * GreySumTable.BLUE_WEIGHT;
+        for (; i < to; i++) {
+            sum += GreySumTable.grey(pixels[i]);
+        }
+        return sum;
+    }
+}
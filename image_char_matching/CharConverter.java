@@ -14,7 +14,7 @@ import java.awt.image.BufferedImage;
 public class CharConverter {
     private static final double X_OFFSET_FACTOR = 0.2;
     private static final double Y_OFFSET_FACTOR = 0.75;
-    private static final String FONT_NAME = "Courier New";
+    public static final String FONT_NAME = "Courier New";
     public static final int DEFAULT_PIXEL_RESOLUTION = 16;
 
     /**
@@ -33,6 +33,14 @@ public class CharConverter {
         return matrix;
     }
 
+    /**
+     * Returns the name of the font characters are actually rendered with: FONT_NAME if it is
+     * installed, otherwise the font AWT silently falls back to.
+     */
+    public static String getRenderingFontName() {
+        return new Font(FONT_NAME, Font.PLAIN, DEFAULT_PIXEL_RESOLUTION).getFontName();
+    }
+
     private static BufferedImage getBufferedImage(char c, String fontName, int pixelsPerRow) {
         String charStr = Character.toString(c);
         Font font = new Font(fontName, Font.PLAIN, pixelsPerRow);
@@ -0,0 +1,152 @@
+package image_char_matching;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Caches the number of black pixels in the rendering of each character, so that characters are
+ * rendered through AWT at most once per (font, pixel resolution, char).
+ * The cache lives in memory and in a small text file that is reused across runs; when the file is
+ * missing or cannot be written, the cache simply works in memory only.
+ * Every line of the file is keyed by the font the characters were actually rendered with (which is not
+ * the requested one when it is not installed), the JDK version and the format of the file; lines with any
+ * other key are dropped from the file when it is loaded.
+ */
+public class GlyphBrightnessCache {
+    private static final Path DEFAULT_CACHE_FILE =
+            Paths.get(System.getProperty("user.home"), ".ascii_art_glyph_cache");
+    private static final GlyphBrightnessCache DEFAULT_CACHE = new GlyphBrightnessCache(DEFAULT_CACHE_FILE);
+    private static final String SEPARATOR = "\t";
+    private static final String FORMAT_VERSION = "2";
+    private static final String JAVA_VERSION_PROPERTY = "java.version";
+    private static final int NUM_FIELDS = 6; // Format, JDK, font, resolution, char, count.
+    private static final int NUM_KEY_FIELDS = 4;
+
+    private final Path cacheFile;
+    private String renderingKey; // Format, JDK, rendering font and resolution. Set on first use.
+    private Map<Integer, Integer> numTrueCells; // Keyed by char. Loaded on first use.
+
+    /**
+     * Constructs a cache backed by the given file.
+     *
+     * @param cacheFile The file the cache is loaded from and saved to.
+     */
+    public GlyphBrightnessCache(Path cacheFile) {
+        this.cacheFile = cacheFile;
+    }
+
+    /**
+     * Returns the cache shared by all matchers, backed by a file in the user's home directory.
+     *
+     * @return The default cache.
+     */
+    public static GlyphBrightnessCache getDefault() {
+        return DEFAULT_CACHE;
+    }
+
+    /**
+     * Returns the number of black pixels in the rendering of a character by CharConverter,
+     * rendering it only if it is not cached yet.
+     *
+     * @param c The character.
+     * @return The number of true cells in the boolean representation of the character.
+     */
+    public synchronized int getNumTrueCells(char c) {
+        if (numTrueCells == null) {
+            renderingKey = String.join(SEPARATOR, FORMAT_VERSION, System.getProperty(JAVA_VERSION_PROPERTY),
+                    CharConverter.getRenderingFontName(),
+                    String.valueOf(CharConverter.DEFAULT_PIXEL_RESOLUTION));
+            numTrueCells = load();
+        }
+        Integer cached = numTrueCells.get((int) c);
+        if (cached != null) {
+            return cached;
+        }
+
+        int count = countTrueCells(CharConverter.convertToBoolArray(c));
+        numTrueCells.put((int) c, count);
+        save(formatLine(c, count), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        return count;
+    }
+
+    /**
+     * Counts the number of true cells in a boolean representation of a character.
+     * @param boolMatrix 2D boolean array representing the character.
+     * @return The count of true cells.
+     */
+    private static int countTrueCells(boolean[][] boolMatrix) {
+        int counter = 0;
+
+        for (boolean[] row : boolMatrix) {
+            for (boolean cell : row) {
+                if (cell) {
+                    counter++;
+                }
+            }
+        }
+        return counter;
+    }
+
+    /**
+     * Reads the cached counts of the current rendering key from the cache file, skipping malformed lines.
+     * If the file holds lines of any other key, it is rewritten without them.
+     *
+     * @return The cached counts, or an empty map if the file cannot be read.
+     */
+    private Map<Integer, Integer> load() {
+        Map<Integer, Integer> loaded = new HashMap<>();
+        List<String> lines;
+        try {
+            lines = Files.exists(cacheFile) ?
+                    Files.readAllLines(cacheFile, StandardCharsets.UTF_8) : Collections.emptyList();
+        } catch (IOException e) {
+            return loaded;
+        }
+
+        StringBuilder kept = new StringBuilder();
+        boolean dropped = false;
+        for (String line : lines) {
+            String[] fields = line.split(SEPARATOR);
+            if (fields.length != NUM_FIELDS ||
+                    !String.join(SEPARATOR, Arrays.copyOf(fields, NUM_KEY_FIELDS)).equals(renderingKey)) {
+                dropped = true;
+                continue;
+            }
+            try {
+                loaded.put(Integer.parseInt(fields[NUM_KEY_FIELDS]),
+                        Integer.parseInt(fields[NUM_KEY_FIELDS + 1]));
+                kept.append(line).append(System.lineSeparator());
+            } catch (NumberFormatException e) {
+                dropped = true; // A corrupt line only costs one more rendering.
+            }
+        }
+        if (dropped) {
+            save(kept.toString(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+        }
+        return loaded;
+    }
+
+    private String formatLine(char c, int count) {
+        return renderingKey + SEPARATOR + (int) c + SEPARATOR + count + System.lineSeparator();
+    }
+
+    /**
+     * Writes lines to the cache file. Failures are ignored, since the counts are still cached in memory.
+     */
+    private void save(String lines, StandardOpenOption... options) {
+        try {
+            Files.write(cacheFile, lines.getBytes(StandardCharsets.UTF_8), options);
+        } catch (IOException | SecurityException e) {
+            // The cache works in memory only.
+        }
+    }
+}
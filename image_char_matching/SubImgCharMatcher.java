@@ -12,6 +12,8 @@ import java.util.*;
  * SubImgCharMatcher is a utility class that maps characters to brightness values,
  * normalizes these values, and allows efficient retrieval of the closest matching character
  * based on a given brightness level.
+ * Changes to the matcher are serialized and publish a new immutable Snapshot, so one matcher can be
+ * shared by any number of rendering threads, which read snapshots without locking.
  */
 public class SubImgCharMatcher {
 
@@ -25,14 +27,166 @@ public class SubImgCharMatcher {
     private static final String DOWN = "down";
     private static final String ROUND_INCORRECT_FORMAT_MESSAGE =
             "Did not change rounding method due to incorrect format.";
-    private static final String WRONG_METHOD_EXCEPTION = "Wrong round method";
     private static final String WRONG_BRIGHTNESS_VALUE = "Calculated value < 0 or value > 1";
 
     private Map<Character, Double> charMap; // Stores raw brightness values for each character
     private Map<Character, Double> brightnessCharMap; // Stores normalized brightness values
     private double minValue; // Minimum brightness value
     private double maxValue; // Maximum brightness value
-    private String roundMethod;
+    private RoundMethod roundMethod;
+    // The lookup compiled from brightnessCharMap, replaced (never modified) on every change.
+    private volatile Snapshot snapshot;
+
+    /**
+     * The rounding methods, each measuring the distance between a brightness and a character's brightness
+     * its own way. Parsed once, in setRoundMethod, so matching never looks at the method's name.
+     */
+    private enum RoundMethod {
+        /**
+         * No rounding is applied. The absolute difference is returned.
+         */
+        ABS {
+            @Override
+            double distance(double providedBrightness, double currentCharBrightness) {
+                return Math.abs(currentCharBrightness - providedBrightness);
+            }
+        },
+        /**
+         * Only considers brightness values greater than or equal to the provided brightness.
+         */
+        UP {
+            @Override
+            double distance(double providedBrightness, double currentCharBrightness) {
+                return (currentCharBrightness >= providedBrightness) ?
+                        currentCharBrightness - providedBrightness : Double.POSITIVE_INFINITY;
+            }
+        },
+        /**
+         * Only considers brightness values less than or equal to the provided brightness.
+         */
+        DOWN {
+            @Override
+            double distance(double providedBrightness, double currentCharBrightness) {
+                return (currentCharBrightness <= providedBrightness) ?
+                        providedBrightness - currentCharBrightness : Double.POSITIVE_INFINITY;
+            }
+        };
+
+        /**
+         * Calculates the distance between the provided brightness and the character brightness.
+         *
+         * @param providedBrightness    The brightness value provided by the user, between 0 and 1 inclusive.
+         * @param currentCharBrightness The brightness value associated with a character.
+         * @return The distance, or Double.POSITIVE_INFINITY if this method never rounds to the character.
+         */
+        abstract double distance(double providedBrightness, double currentCharBrightness);
+    }
+
+    /**
+     * An immutable view of the matcher at one point in time: its lookup arrays and rounding method.
+     * A snapshot never changes, so any number of threads may match against it without locking,
+     * while the matcher itself goes on being edited.
+     */
+    public static final class Snapshot {
+        // The distinct normalized brightness values in ascending order, and for each of them the
+        // lowest character having it.
+        private final double[] sortedBrightness;
+        private final char[] sortedChars;
+        private final RoundMethod roundMethod;
+
+        private Snapshot(double[] sortedBrightness, char[] sortedChars, RoundMethod roundMethod) {
+            this.sortedBrightness = sortedBrightness;
+            this.sortedChars = sortedChars;
+            this.roundMethod = roundMethod;
+        }
+
+        /**
+         * Returns a snapshot with the same lookup arrays and a different rounding method.
+         */
+        private Snapshot withRoundMethod(RoundMethod roundMethod) {
+            return new Snapshot(sortedBrightness, sortedChars, roundMethod);
+        }
+
+        /**
+         * Finds the character with the closest normalized brightness to the given brightness.
+         * In case of ties, the character with the lower ASCII value is selected.
+         * Uses a binary search over the lookup arrays, so it takes O(log n) time and allocates nothing.
+         * @param brightness The target brightness value.
+         * @return The character closest to the given brightness.
+         */
+        public char getCharByImageBrightness(double brightness) throws CharMatcherExceptions {
+            if (brightness < MIN_BRIGTHNESS || brightness > MAX_BRIGHTNESS) {
+                throw new CharMatcherExceptions(ILLEGAL_BRIGHTNESS_VALUE_MESSAGE);
+            }
+
+            // The closest values on both sides of the given brightness:
+            int upper = Arrays.binarySearch(sortedBrightness, brightness);
+            int lower;
+            if (upper >= 0) {
+                lower = upper;
+            } else {
+                upper = -upper - 1;
+                lower = upper - 1;
+            }
+
+            int closest = closerIndex(brightness, lower, upper);
+            if (closest < 0) {
+                return '\0';
+            }
+
+            // Distances are rounded, so neighbouring values may be exactly as close; the lowest char wins.
+            double closestDistance = calculateDistance(brightness, sortedBrightness[closest]);
+            char closestChar = sortedChars[closest];
+            for (int i = Math.min(lower, upper) - 1;
+                 i >= 0 && calculateDistance(brightness, sortedBrightness[i]) == closestDistance; i--) {
+                closestChar = (char) Math.min(closestChar, sortedChars[i]);
+            }
+            for (int i = Math.max(lower, upper) + 1;
+                 i < sortedBrightness.length &&
+                         calculateDistance(brightness, sortedBrightness[i]) == closestDistance; i++) {
+                closestChar = (char) Math.min(closestChar, sortedChars[i]);
+            }
+            return closestChar;
+        }
+
+        /**
+         * Chooses the closer of two indices of the lookup arrays according to the rounding method.
+         *
+         * @param brightness The target brightness value.
+         * @param first      An index of the lookup arrays, possibly out of bounds.
+         * @param second     Another index of the lookup arrays, possibly out of bounds.
+         * @return The index at the smaller (finite) distance, the one with the lower char on a tie,
+         *         or -1 if neither index is valid for the rounding method.
+         */
+        private int closerIndex(double brightness, int first, int second) {
+            boolean firstValid = first >= 0 && first < sortedBrightness.length;
+            boolean secondValid = second >= 0 && second < sortedBrightness.length;
+            double firstDistance = firstValid ?
+                    calculateDistance(brightness, sortedBrightness[first]) : Double.POSITIVE_INFINITY;
+            double secondDistance = secondValid ?
+                    calculateDistance(brightness, sortedBrightness[second]) : Double.POSITIVE_INFINITY;
+            if (firstDistance == Double.POSITIVE_INFINITY && secondDistance == Double.POSITIVE_INFINITY) {
+                return -1;
+            }
+            if (firstDistance != secondDistance) {
+                return firstDistance < secondDistance ? first : second;
+            }
+            return sortedChars[second] < sortedChars[first] ? second : first;
+        }
+
+        /**
+         * Calculates the distance between the provided brightness and the character brightness
+         * using the rounding method of this snapshot (see RoundMethod).
+         *
+         * @param providedBrightness     The brightness value provided by the user. It must be a double
+         *                                between 0 and 1 inclusive.
+         * @param currentCharBrightness  The brightness value associated with a character.
+         * @return The calculated distance as a double.
+         */
+        private double calculateDistance(double providedBrightness, double currentCharBrightness) {
+            return roundMethod.distance(providedBrightness, currentCharBrightness);
+        }
+    }
 
     /**
      * Constructor to initialize the character matcher with a set of characters.
@@ -41,7 +195,7 @@ public class SubImgCharMatcher {
     public SubImgCharMatcher(char[] charset) {
         this.charMap = new HashMap<>();
         this.brightnessCharMap = new HashMap<>();
-        this.roundMethod = ABS;
+        this.roundMethod = RoundMethod.ABS;
 
         minValue = Double.POSITIVE_INFINITY;
         maxValue = Double.NEGATIVE_INFINITY;
@@ -54,6 +208,7 @@ public class SubImgCharMatcher {
             this.charMap.put(c, value);
         }
         createBrightnessCharMap();
+        compileLookup();
     }
 
     /**
@@ -77,69 +232,52 @@ public class SubImgCharMatcher {
     }
 
     /**
-     * Finds the character with the closest normalized brightness to the given brightness.
-     * In case of ties, the character with the lower ASCII value is selected.
+     * Returns the current state of the matcher. The snapshot is unaffected by later changes to the
+     * matcher, so a rendering thread should take one snapshot per frame and match against it.
+     *
+     * @return The current snapshot.
+     */
+    public Snapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Finds the character with the closest normalized brightness to the given brightness,
+     * using the current snapshot. Safe to call concurrently with changes to the matcher.
      * @param brightness The target brightness value.
      * @return The character closest to the given brightness.
      */
     public char getCharByImageBrightness(double brightness) throws CharMatcherExceptions {
-        if (brightness < MIN_BRIGTHNESS || brightness > MAX_BRIGHTNESS) {
-            throw new CharMatcherExceptions(ILLEGAL_BRIGHTNESS_VALUE_MESSAGE);
-        }
-
-        char closestChar = '\0';
-        double closestDistance = Double.POSITIVE_INFINITY;
-
-        for (Map.Entry<Character, Double> entry : brightnessCharMap.entrySet()) {
-            Character currentChar = entry.getKey();
-            Double currentCharBrightness = entry.getValue();
-//            double distance = Math.abs(charBrightness - brightness);
-            double distance = calculateDistance(brightness, currentCharBrightness);
-
-            if (distance < closestDistance ||
-                    (distance == closestDistance && currentChar < closestChar)) {
-                closestChar = currentChar;
-                closestDistance = distance; // Correctly update closestDistance
-            }
-        }
-        return closestChar;
+        return snapshot.getCharByImageBrightness(brightness);
     }
 
     /**
-     * Calculates the distance between the provided brightness and the character brightness
-     * using the specified rounding method.
-     *
-     * @param providedBrightness     The brightness value provided by the user. It must be a double
-     *                                between 0 and 1 inclusive.
-     * @param currentCharBrightness  The brightness value associated with a character.
-     * @return The calculated distance as a double.
-     *
-     * Rounding methods:
-     * - ABS: No rounding is applied. The absolute difference is returned.
-     * - UP: Only considers brightness values greater than or equal to the provided brightness.
-     *       Returns the difference if the current character's brightness is greater, otherwise
-     *       returns Double.POSITIVE_INFINITY.
-     * - DOWN: Only considers brightness values less than or equal to the provided brightness.
-     *         Returns the difference if the current character's brightness is smaller, otherwise
-     *         returns Double.POSITIVE_INFINITY.
+     * Compiles brightnessCharMap into the sorted lookup arrays of a new snapshot and publishes it.
+     * Characters with an undefined normalized brightness (a charset whose characters are all
+     * equally bright) can never be matched, so they are left out.
      */
-    private double calculateDistance(double providedBrightness, double currentCharBrightness) {
-        switch (this.roundMethod) {
-            case ABS:
-                return Math.abs(currentCharBrightness - providedBrightness);
-            case UP:
-                // Closest from upward side
-                return (currentCharBrightness >= providedBrightness) ?
-                        currentCharBrightness - providedBrightness : Double.POSITIVE_INFINITY;
-
-            case DOWN:
-                // Closest from downward side
-                return (currentCharBrightness <= providedBrightness) ?
-                        providedBrightness - currentCharBrightness : Double.POSITIVE_INFINITY;
-
-            default:
-                throw new CharMatcherExceptions(WRONG_METHOD_EXCEPTION);
+    private void compileLookup() {
+        List<Map.Entry<Character, Double>> entries = new ArrayList<>();
+        for (Map.Entry<Character, Double> entry : brightnessCharMap.entrySet()) {
+            if (!entry.getValue().isNaN()) {
+                entries.add(entry);
+            }
         }
+        entries.sort(Map.Entry.<Character, Double>comparingByValue()
+                .thenComparing(Map.Entry.comparingByKey()));
+
+        double[] values = new double[entries.size()];
+        char[] chars = new char[entries.size()];
+        int count = 0;
+        for (Map.Entry<Character, Double> entry : entries) {
+            // Keep only the lowest char of every brightness value:
+            if (count == 0 || values[count - 1] != entry.getValue()) {
+                values[count] = entry.getValue();
+                chars[count] = entry.getKey();
+                count++;
+            }
+        }
+        this.snapshot = new Snapshot(Arrays.copyOf(values, count), Arrays.copyOf(chars, count), roundMethod);
     }
 
     /**
@@ -153,30 +291,31 @@ public class SubImgCharMatcher {
      * @throws InputExceptions if the provided roundMethod is invalid or not recognized.
      *         The exception message will be: ROUND_INCORRECT_FORMAT_MESSAGE.
      */
-    public void setRoundMethod(String roundMethod) throws InputExceptions {
+    public synchronized void setRoundMethod(String roundMethod) throws InputExceptions {
         switch (roundMethod) {
             case ABS:
-                this.roundMethod = ABS;
-                return;
+                this.roundMethod = RoundMethod.ABS;
+                break;
             case UP:
-                this.roundMethod = UP;
-                return;
+                this.roundMethod = RoundMethod.UP;
+                break;
             case DOWN:
-                this.roundMethod = DOWN;
-                return;
+                this.roundMethod = RoundMethod.DOWN;
+                break;
             default:
                 throw new InputExceptions(ROUND_INCORRECT_FORMAT_MESSAGE);
         }
+        this.snapshot = snapshot.withRoundMethod(this.roundMethod);
     }
 
     /**
      * Calculates the brightness value of a character based on its boolean representation.
+     * The number of true cells comes from the glyph cache, so warm runs skip rendering entirely.
      * @param c The character whose brightness is to be calculated.
      * @return The normalized brightness value.
      */
     private Double getCharBrightnessValue(char c) {
-        boolean[][] boolMatrix = CharConverter.convertToBoolArray(c);
-        int numTrueCells = getNumTrueCells(boolMatrix);
+        int numTrueCells = GlyphBrightnessCache.getDefault().getNumTrueCells(c);
         double value = (double) numTrueCells / NUM_CELLS;
         if (value < 0 || value > 1) {
             System.out.println(WRONG_BRIGHTNESS_VALUE);
@@ -184,24 +323,6 @@ public class SubImgCharMatcher {
         return value;
     }
 
-    /**
-     * Counts the number of true cells in a boolean representation of a character.
-     * @param boolMatrix 2D boolean array representing the character.
-     * @return The count of true cells.
-     */
-    private int getNumTrueCells(boolean[][] boolMatrix) {
-        int counter = 0;
-
-        for (boolean[] row : boolMatrix) {
-            for (boolean cell : row) {
-                if (cell) {
-                    counter++;
-                }
-            }
-        }
-        return counter;
-    }
-
     /**
      * Normalizes the brightness values and stores them in the brightnessCharMap.
      */
@@ -216,7 +337,7 @@ public class SubImgCharMatcher {
      * Adds a new character to the matcher and updates brightness maps if necessary.
      * @param c The character to add.
      */
-    public void addChar(char c) {
+    public synchronized void addChar(char c) {
         if (charMap.containsKey(c)) {
             return; // Character already exists
         }
@@ -244,12 +365,15 @@ public class SubImgCharMatcher {
             double normalizedBrightness = (value - minValue) / (maxValue - minValue);
             brightnessCharMap.put(c, normalizedBrightness);
         }
+        compileLookup();
     }
 
     /**
      * Recalculates minValue and maxValue based on the current character map.
+     * Leaves brightnessCharMap and the snapshot stale, so it is only called by removeChar, which rebuilds
+     * both right after.
      */
-    public void findNewMinMax() {
+    private void findNewMinMax() {
         minValue = Double.POSITIVE_INFINITY;
         maxValue = Double.NEGATIVE_INFINITY;
 
@@ -263,7 +387,7 @@ public class SubImgCharMatcher {
      * Removes a character from the matcher and updates brightness maps if necessary.
      * @param c The character to remove.
      */
-    public void removeChar(char c) {
+    public synchronized void removeChar(char c) {
         // char doesn't exist
         if (!charMap.containsKey(c)) {
             return;
@@ -280,5 +404,6 @@ public class SubImgCharMatcher {
             findNewMinMax();
             createBrightnessCharMap();
         }
+        compileLookup();
     }
 }